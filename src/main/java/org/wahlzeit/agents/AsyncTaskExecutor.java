@@ -5,6 +5,7 @@ import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.RetryOptions;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import org.wahlzeit.model.Photo;
+import org.wahlzeit.services.UnitOfWork;
 
 import java.util.logging.Logger;
 
@@ -26,8 +27,23 @@ public class AsyncTaskExecutor {
 	 */
 	public static void savePhotoAsync(String photoId) {
 		log.info("Calling async push task to persist PhotoId " + photoId);
+		// the task must find what this request has written so far
+		UnitOfWork.flushCurrent();
 		Queue queue = QueueFactory.getDefaultQueue();
 		RetryOptions retryOptions = withTaskRetryLimit(3);
 		queue.add(TaskOptions.Builder.withUrl("/persistPhoto").param(Photo.ID, photoId).retryOptions(retryOptions));
 	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Starts a task in the default queue to create the pending images of the photo with the specified ID.
+	 */
+	public static void createRenditionsAsync(String photoId) {
+		log.info("Calling async push task to create renditions of PhotoId " + photoId);
+		UnitOfWork.flushCurrent();
+		Queue queue = QueueFactory.getDefaultQueue();
+		RetryOptions retryOptions = withTaskRetryLimit(3);
+		queue.add(TaskOptions.Builder.withUrl("/createRenditions").param(Photo.ID, photoId).retryOptions(retryOptions));
+	}
 }
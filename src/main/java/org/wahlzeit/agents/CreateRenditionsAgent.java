@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.agents;
+
+import org.wahlzeit.model.FishPhotoManager;
+import org.wahlzeit.model.Photo;
+import org.wahlzeit.services.LogBuilder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Servlet to create the images of uploaded Photos from their originals in the background.
+ * As it has nothing to do with <code>UserSession</code> or UI, it
+ * is not implemented as a Handler or a child of <code>AbstractServlet</code>.
+ */
+public class CreateRenditionsAgent extends HttpServlet {
+
+	private static final Logger log = Logger.getLogger(CreateRenditionsAgent.class.getName());
+
+	/**
+	 * @methodtype command
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		String id = request.getParameter(Photo.ID);
+		log.config(LogBuilder.createSystemMessage().addParameter("Try to create renditions of PhotoId", id).toString());
+		if (id != null && !"".equals(id)) {
+			// failing lets the task queue retry, e.g. if the photo has not been saved yet
+			Photo photo = FishPhotoManager.getInstance().getPhoto(id);
+			if (photo == null) {
+				throw new ServletException("Could not find Photo with ID " + id);
+			}
+
+			try {
+				FishPhotoManager.getInstance().createRenditions(photo);
+			} catch (Exception e) {
+				throw new ServletException("Could not create renditions of Photo with ID " + id, e);
+			}
+			log.config(LogBuilder.createSystemMessage().addMessage("Renditions created.").toString());
+		}
+		response.setStatus(200);
+	}
+}
@@ -32,7 +32,9 @@ import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.RenderedWebPart;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartCache;
 import org.wahlzeit.webparts.WebPartTemplate;
 import org.wahlzeit.webparts.WebPartTemplateService;
 
@@ -79,12 +81,43 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 		return new WebPart(tmpl);
 	}
 
+	/**
+	 * Returns the template rendered without any values, shared by all sessions with the same language.
+	 *
+	 * @methodtype factory
+	 */
+	protected final RenderedWebPart createCachedWebPart(UserSession us, String name) {
+		RenderedWebPart result = getCachedWebPart(us, name);
+		if (result == null) {
+			result = cacheWebPart(createWebPart(us, name));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the cached rendering of a template for the session's language and the given values, or null if there
+	 * is none; see cacheWebPart(WebPart, String...).
+	 */
+	protected final RenderedWebPart getCachedWebPart(UserSession us, String name, String... varyingValues) {
+		String languageCode = us.getClient().getLanguageConfiguration().getLanguageCode();
+		String templateName = WebPartTemplateService.getInstance().getTemplateName(languageCode, name);
+		return WebPartCache.getInstance().getFragment(templateName, varyingValues);
+	}
+
+	/**
+	 * Renders part for all sessions with the same language; part must depend on nothing but its template, the
+	 * language, and varyingValues.
+	 */
+	protected final RenderedWebPart cacheWebPart(WebPart part, String... varyingValues) {
+		return WebPartCache.getInstance().putFragment(part, varyingValues);
+	}
+
 	/**
 	 *
 	 */
 	protected String getPhotoThumb(UserSession us, Photo photo) {
 		String result = null;
-		if (photo != null) {
+		if (photo != null && photo.isImageAvailable(PhotoSize.THUMB)) {
 			String imageLink = getPhotoAsRelativeResourcePathString(photo, PhotoSize.THUMB);
 			result = HtmlUtil.asImg(HtmlUtil.asPath(imageLink), photo.getThumbWidth(), photo.getThumbHeight());
 		} else {
@@ -95,11 +128,17 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	}
 
 	/**
-	 *
+	 * Returns the path of the image; if the image version is known, it is part of the path, so that the image can be
+	 * cached by browsers for good.
 	 */
 	protected String getPhotoAsRelativeResourcePathString(Photo photo, PhotoSize size) {
-		return SysConfig.getPhotosDir().getRelativeDir() + "/?type=image&photoId=" + photo.getId().asString() +
-				"&size=" + String.valueOf(size.asInt());
+		String result = SysConfig.getPhotosDir().getRelativeDir() + "/?type=image&photoId=" +
+				photo.getId().asString() + "&size=" + String.valueOf(size.asInt());
+		String version = photo.getImageVersion(size);
+		if (version != null) {
+			result += "&" + Photo.IMAGE_VERSION + "=" + version;
+		}
+		return result;
 	}
 
 	/**
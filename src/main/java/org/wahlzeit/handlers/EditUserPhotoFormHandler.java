@@ -26,6 +26,7 @@ import org.wahlzeit.model.FishPhotoManager;
 import org.wahlzeit.model.ModelConfig;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoStatus;
+import org.wahlzeit.model.PraiseCounterManager;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
@@ -71,6 +72,7 @@ public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 		part.addString(Photo.ID, id);
 		part.addString(Photo.THUMB, getPhotoThumb(us, photo));
 
+		PraiseCounterManager.getInstance().refreshPraise(photo);
 		part.addString(Photo.PRAISE, photo.getPraiseAsString(config));
 		part.maskAndAddString(Photo.TAGS, photo.getTags().asString());
 
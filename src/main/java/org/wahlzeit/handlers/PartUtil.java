@@ -142,6 +142,10 @@ public interface PartUtil {
 	String EDIT_PHOTO_CASE_FORM_NAME = "editPhotoCaseForm";
 	String EDIT_PHOTO_CASE_FORM_FILE = "forms/EditPhotoCaseForm";
 
+	String SHOW_HALL_OF_FAME_PAGE_NAME = "best";
+	String SHOW_HALL_OF_FAME_PAGE_FILE = "pages/ShowHallOfFamePage";
+	String RANKED_PHOTO_INFO_FILE = "infos/RankedPhotoInfo";
+
 	String SHOW_ADMIN_PAGE_NAME = "admin";
 	String SHOW_ADMIN_PAGE_FILE = "pages/ShowAdminPage";
 	String SHOW_ADMIN_MENU_FORM_NAME = "showAdminMenuForm";
@@ -25,6 +25,7 @@ import org.wahlzeit.model.Client;
 import org.wahlzeit.model.FishPhotoManager;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoId;
+import org.wahlzeit.model.PraiseCounterManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.utils.StringUtil;
@@ -81,7 +82,7 @@ public class PraisePhotoFormHandler extends AbstractWebFormHandler {
 		if (!StringUtil.isNullOrEmptyString(praise)) {
 			if (!us.hasPraisedPhoto(photo)) {
 				int value = Integer.parseInt(praise);
-				photo.addToPraise(value);
+				PraiseCounterManager.getInstance().addPraise(photo, value);
 				client.addPraisedPhotoId(photo.getId());
 				us.addProcessedPhoto(photo);
 				wasPraised = true;
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.handlers;
+
+import org.wahlzeit.model.AccessRights;
+import org.wahlzeit.model.ModelConfig;
+import org.wahlzeit.model.Photo;
+import org.wahlzeit.model.PhotoLeaderboard;
+import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.PhotoRanking;
+import org.wahlzeit.model.UserSession;
+import org.wahlzeit.utils.HtmlUtil;
+import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WritableList;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A handler class for a specific web page; it shows the best photos by praise, optionally for one tag only.
+ */
+public class ShowHallOfFamePageHandler extends AbstractWebPageHandler {
+
+	/**
+	 *
+	 */
+	public static final String TAG = "tag";
+
+	/**
+	 *
+	 */
+	public static final int NO_TOP_PHOTOS = 20;
+
+	/**
+	 *
+	 */
+	public ShowHallOfFamePageHandler() {
+		initialize(PartUtil.SHOW_HALL_OF_FAME_PAGE_FILE, AccessRights.GUEST);
+	}
+
+	/**
+	 *
+	 */
+	protected String doHandleGet(UserSession us, String link, Map args) {
+		us.getAndSaveAsString(args, TAG);
+		return super.doHandleGet(us, link, args);
+	}
+
+	/**
+	 *
+	 */
+	protected void makeWebPageBody(UserSession us, WebPart page) {
+		String tag = (String) us.getSavedArg(TAG);
+		PhotoLeaderboard leaderboard = PhotoLeaderboard.getInstance();
+		List<PhotoRanking.Entry> entries;
+		if (StringUtil.isNullOrEmptyString(tag)) {
+			tag = "";
+			entries = leaderboard.getTopPhotos(NO_TOP_PHOTOS);
+		} else {
+			entries = leaderboard.getTopPhotos(tag, NO_TOP_PHOTOS);
+		}
+		page.maskAndAddString(TAG, tag);
+
+		ModelConfig config = us.getClient().getLanguageConfiguration();
+		WritableList list = new WritableList();
+		int rank = 0;
+		for (PhotoRanking.Entry entry : entries) {
+			Photo photo = PhotoManager.getInstance().getPhoto(entry.getPhotoId());
+			if ((photo != null) && photo.isVisible()) {
+				list.append(makeRankedPhotoInfo(us, config, photo, entry, ++rank));
+			}
+		}
+
+		page.addWritable("photos", list);
+		page.addString(UserSession.MESSAGE, (rank == 0) ? config.getNoPraisedPhotos() : "");
+	}
+
+	/**
+	 *
+	 */
+	protected WebPart makeRankedPhotoInfo(UserSession us, ModelConfig config, Photo photo, PhotoRanking.Entry entry,
+			int rank) {
+		WebPart result = createWebPart(us, PartUtil.RANKED_PHOTO_INFO_FILE);
+		String id = photo.getId().asString();
+		result.addString("rank", String.valueOf(rank));
+		result.addString(Photo.THUMB, getPhotoThumb(us, photo));
+		result.addString(Photo.PRAISE, config.asPraiseString(entry.getPraise()));
+		result.addString(Photo.NO_VOTES, String.valueOf(entry.getNoVotes()));
+		result.addString(Photo.LINK, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(id)));
+		return result;
+	}
+
+}
@@ -28,8 +28,10 @@ import org.wahlzeit.model.PhotoFilter;
 import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.model.PraiseCounterManager;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
+import org.wahlzeit.services.Language;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.webparts.WebPart;
 import org.wahlzeit.webparts.Writable;
@@ -129,14 +131,14 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		if (lastPraisedPhoto != null) {
 			parts.append(makePriorPhotoInfo(us, lastPraisedPhoto));
 		} else {
-			parts.append(createWebPart(us, PartUtil.BLURP_INFO_FILE));
+			parts.append(createCachedWebPart(us, PartUtil.BLURP_INFO_FILE));
 		}
 
 		WebFormHandler handler = getFormHandler(PartUtil.FILTER_PHOTOS_FORM_NAME);
 		Writable filterPhotos = handler.makeWebPart(us);
 		parts.append(filterPhotos);
 
-		parts.append(createWebPart(us, PartUtil.LINKS_INFO_FILE));
+		parts.append(createCachedWebPart(us, PartUtil.LINKS_INFO_FILE));
 
 		page.addWritable("sidebar", parts);
 	}
@@ -167,6 +169,14 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 
 		PhotoSize maxPhotoSize = photo.getMaxPhotoSize();
 		PhotoSize photoSize = (maxPhotoSize.isSmaller(pagePhotoSize)) ? maxPhotoSize : pagePhotoSize;
+		// while the images are still being created, show the best one there is
+		photoSize = photo.getBestAvailableSize(photoSize);
+		if (photoSize == null) {
+			Language langValue = client.getLanguage();
+			page.addString(Photo.IMAGE, HtmlUtil.asImg(getEmptyImageAsRelativeResourcePathString(langValue)));
+			return;
+		}
+
 		String imageLink = getPhotoAsRelativeResourcePathString(photo, photoSize);
 		page.addString(Photo.IMAGE, HtmlUtil.asImg(HtmlUtil.asPath(imageLink)));
 	}
@@ -219,6 +229,7 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 	protected WebPart makePriorPhotoInfo(UserSession us, Photo lastPraisedPhoto) {
 		WebPart result = createWebPart(us, PartUtil.PHOTO_INFO_FILE);
 
+		PraiseCounterManager.getInstance().refreshPraise(lastPraisedPhoto);
 		result.addString(Photo.PRAISE, lastPraisedPhoto.getPraiseAsString(us.getClient().getLanguageConfiguration()));
 		result.addString(Photo.THUMB, getPhotoThumb(us, lastPraisedPhoto));
 		result.addString(Photo.CAPTION, getPhotoCaption(us, lastPraisedPhoto));
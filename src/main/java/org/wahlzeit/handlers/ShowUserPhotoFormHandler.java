@@ -26,6 +26,7 @@ import org.wahlzeit.model.ModelConfig;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.PraiseCounterManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
@@ -63,6 +64,7 @@ public class ShowUserPhotoFormHandler extends AbstractWebFormHandler {
 		part.addString(Photo.ID, id);
 		part.addString(Photo.THUMB, getPhotoThumb(us, photo));
 
+		PraiseCounterManager.getInstance().refreshPraise(photo);
 		part.addString(Photo.PRAISE, photo.getPraiseAsString(config));
 
 		String tags = photo.getTags().asString();
@@ -95,6 +95,9 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 					addParameter("ID", photo.getId().asString()).toString());
 
 			AsyncTaskExecutor.savePhotoAsync(photo.getId().asString());
+			if (photo.hasPendingRenditions()) {
+				AsyncTaskExecutor.createRenditionsAsync(photo.getId().asString());
+			}
 		} catch (Exception ex) {
 			log.warning(LogBuilder.createSystemMessage().addException("uploading photo failed", ex).toString());
 			us.setMessage(config.getPhotoUploadFailed());
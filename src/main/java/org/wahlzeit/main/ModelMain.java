@@ -20,16 +20,22 @@
 
 package org.wahlzeit.main;
 
+import org.wahlzeit.model.AppEngineImageScaler;
 import org.wahlzeit.model.FishPhotoFactory;
 import org.wahlzeit.model.FishPhotoManager;
 import org.wahlzeit.model.GlobalsManager;
+import org.wahlzeit.model.ImageScaler;
+import org.wahlzeit.model.LocalImageScaler;
 import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.persistence.DatastoreAdapter;
+import org.wahlzeit.model.persistence.FileSystemAdapter;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.services.UnitOfWork;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -52,7 +58,10 @@ public abstract class ModelMain extends AbstractMain {
 
 		log.config(LogBuilder.createSystemMessage().addAction("load image storage").toString());
 		//GcsAdapter.Builder gcsAdapterBuilder = new GcsAdapter.Builder();
-		ImageStorage.setInstance(new DatastoreAdapter());
+		ImageStorage.setInstance(createImageStorage());
+
+		log.config(LogBuilder.createSystemMessage().addAction("load image scaler").toString());
+		ImageScaler.setInstance(createImageScaler());
 
 		log.config(LogBuilder.createSystemMessage().addAction("load globals").toString());
 		GlobalsManager.getInstance().loadGlobals();
@@ -67,6 +76,34 @@ public abstract class ModelMain extends AbstractMain {
 		FishPhotoManager.getInstance().init();
 	}
 
+	/**
+	 * @methodtype factory
+	 */
+	protected ImageStorage createImageStorage() {
+		String imageStorage = SysConfig.getImageStorage();
+		if (SysConfig.FILE_SYSTEM_IMAGE_STORAGE.equals(imageStorage)) {
+			return new FileSystemAdapter();
+		} else if (SysConfig.DATASTORE_IMAGE_STORAGE.equals(imageStorage)) {
+			return new DatastoreAdapter();
+		}
+
+		throw new IllegalArgumentException("unknown image storage: " + imageStorage);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected ImageScaler createImageScaler() {
+		String imageScaler = SysConfig.getImageScaler();
+		if (SysConfig.LOCAL_IMAGE_SCALER.equals(imageScaler)) {
+			return new LocalImageScaler();
+		} else if (SysConfig.APP_ENGINE_IMAGE_SCALER.equals(imageScaler)) {
+			return new AppEngineImageScaler();
+		}
+
+		throw new IllegalArgumentException("unknown image scaler: " + imageScaler);
+	}
+
 
 	/**
 	 *
@@ -81,10 +118,16 @@ public abstract class ModelMain extends AbstractMain {
 	 *
 	 */
 	public void saveAll() throws IOException{
-		PhotoCaseManager.getInstance().savePhotoCases();
-		FishPhotoManager.getInstance().savePhotos();
-		UserManager.getInstance().saveClients();
-		GlobalsManager.getInstance().saveGlobals();
+		// one unit of work for all managers; everything is saved once it ends
+		UnitOfWork.begin();
+		try {
+			PhotoCaseManager.getInstance().savePhotoCases();
+			FishPhotoManager.getInstance().savePhotos();
+			UserManager.getInstance().saveClients();
+			GlobalsManager.getInstance().saveGlobals();
+		} finally {
+			UnitOfWork.end();
+		}
 	}
 
 	/**
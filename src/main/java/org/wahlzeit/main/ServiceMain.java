@@ -111,7 +111,12 @@ public class ServiceMain extends ModelMain {
 	 */
 	public void configureWebPartTemplateService() {
 		ConfigDir templatesDir = SysConfig.getTemplatesDir();
-		WebPartTemplateService.getInstance().setTemplatesDir(templatesDir);
+		WebPartTemplateService wpts = WebPartTemplateService.getInstance();
+		wpts.setTemplatesDir(templatesDir);
+		wpts.loadAllTemplates();
+		if (SysConfig.isTemplateReloading()) {
+			wpts.startWatchingTemplates();
+		}
 	}
 
 	/**
@@ -197,6 +202,8 @@ public class ServiceMain extends ModelMain {
 		manager.addWebPartHandler(PartUtil.EDIT_PHOTO_CASE_FORM_NAME, new EditPhotoCaseFormHandler());
 		manager.addWebPartHandler(PartUtil.SHOW_PHOTO_CASES_PAGE_NAME, new ShowPhotoCasesPageHandler());
 
+		manager.addWebPartHandler(PartUtil.SHOW_HALL_OF_FAME_PAGE_NAME, new ShowHallOfFamePageHandler());
+
 		// Admin page incl. AdminUserProfile and AdminUserPhoto
 		temp = new ShowAdminPageHandler();
 		manager.addWebPartHandler(PartUtil.SHOW_ADMIN_PAGE_NAME, temp);
@@ -219,6 +226,7 @@ public class ServiceMain extends ModelMain {
 	public void shutDown() throws Exception {
 		//AgentManager am = AgentManager.getInstance();
 		//am.stopAllThreads();
+		WebPartTemplateService.getInstance().stopWatchingTemplates();
 
 		super.shutDown();
 	}
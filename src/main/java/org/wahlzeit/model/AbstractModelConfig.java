@@ -590,6 +590,13 @@ public abstract class AbstractModelConfig extends AbstractConfig implements Mode
 		return doGetValue("NoFlaggedPhotoCases");
 	}
 
+	/**
+	 *
+	 */
+	public String getNoPraisedPhotos() {
+		return doGetValue("NoPraisedPhotos");
+	}
+
 	/**
 	 *
 	 */
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.api.images.Transform;
+import org.wahlzeit.services.LogBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Scales images with the App Engine images service. Only the largest image is scaled from the source; all smaller
+ * ones are derived from that one concurrently, as scaling the much smaller image is a lot cheaper.
+ */
+public class AppEngineImageScaler extends ImageScaler {
+
+	private static final Logger log = Logger.getLogger(AppEngineImageScaler.class.getName());
+
+	/**
+	 * Upper bound of threads that scale the images of one photo
+	 */
+	public static final int MAX_SCALING_THREADS = 4;
+
+	@Override
+	protected Map<PhotoSize, Image> doScaleImage(Image source, int sourceWidth, int sourceHeight,
+												 Collection<PhotoSize> sizes) throws Exception {
+		Map<PhotoSize, Image> result = new EnumMap<PhotoSize, Image>(PhotoSize.class);
+		List<PhotoSize> smallerSizes = new ArrayList<PhotoSize>(new TreeSet<PhotoSize>(sizes));
+		if (smallerSizes.isEmpty()) {
+			return result;
+		}
+
+		PhotoSize largestSize = smallerSizes.remove(smallerSizes.size() - 1);
+		// transforms modify the image they are applied to, so the source is copied once
+		Image largestImage = scaleImage(ImagesServiceFactory.makeImage(source.getImageData()), sourceWidth,
+				sourceHeight, largestSize);
+		result.put(largestSize, largestImage);
+
+		scaleImages(largestImage, sourceWidth, sourceHeight, smallerSizes, result);
+		return result;
+	}
+
+	/**
+	 * Scales the source to all given sizes on threads of the current request and waits for all of them.
+	 *
+	 * @methodtype command
+	 */
+	protected void scaleImages(Image source, final int sourceWidth, final int sourceHeight, List<PhotoSize> sizes,
+							   Map<PhotoSize, Image> result) throws Exception {
+		if (sizes.isEmpty()) {
+			return;
+		}
+
+		final byte[] sourceData = source.getImageData();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(sizes.size(), MAX_SCALING_THREADS),
+				getScalingThreadFactory());
+		List<Future<Image>> images = new ArrayList<Future<Image>>(sizes.size());
+		try {
+			for (final PhotoSize size : sizes) {
+				Callable<Image> task = new Callable<Image>() {
+					@Override
+					public Image call() throws Exception {
+						return scaleImage(ImagesServiceFactory.makeImage(sourceData), sourceWidth, sourceHeight, size);
+					}
+				};
+				images.add(submit(executor, task));
+			}
+
+			for (int i = 0; i < sizes.size(); i++) {
+				result.put(sizes.get(i), images.get(i).get());
+			}
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			throw cause instanceof Exception ? (Exception) cause : ex;
+		} finally {
+			// after a failure, the remaining images are not needed anymore
+			for (Future<Image> image : images) {
+				image.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the task on the calling thread if the executor can not take it, e.g. because no thread could be created;
+	 * the App Engine sandbox denies thread creation with a SecurityException.
+	 *
+	 * @methodtype helper
+	 */
+	protected static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+		try {
+			return executor.submit(task);
+		} catch (RuntimeException ex) {
+			log.config(LogBuilder.createSystemMessage().
+					addException("could not submit scaling task, scaling on calling thread", ex).toString());
+			FutureTask<T> result = new FutureTask<T>(task);
+			result.run();
+			return result;
+		}
+	}
+
+	/**
+	 * On App Engine, threads have to be created by the ThreadManager and end with the request.
+	 *
+	 * @methodtype factory
+	 */
+	protected static ThreadFactory getScalingThreadFactory() {
+		try {
+			return ThreadManager.currentRequestThreadFactory();
+		} catch (RuntimeException ex) {
+			// not in a request, e.g. in tests or tools
+			return Executors.defaultThreadFactory();
+		}
+	}
+
+	/**
+	 * @methodtype factory Scale the image to the given size; the target dimensions are computed from the dimensions
+	 * of the original picture, so that images derived from other renditions come out the same.
+	 */
+	protected static Image scaleImage(Image source, int sourceWidth, int sourceHeight, PhotoSize size)
+			throws Exception {
+		int targetWidth = size.calcAdjustedWidth(sourceWidth, sourceHeight);
+		int targetHeight = size.calcAdjustedHeight(sourceWidth, sourceHeight);
+
+		ImagesService imagesService = ImagesServiceFactory.getImagesService();
+		Transform resize = ImagesServiceFactory.makeResize(targetWidth, targetHeight);
+		Image newImage = imagesService.applyTransform(resize, source);
+
+		log.config(LogBuilder.createSystemMessage().addParameter("Scaled image to size", size.asString()).toString());
+		return newImage;
+	}
+
+}
@@ -50,25 +50,11 @@ public class FishPhotoManager extends PhotoManager {
 	
 
 	/**
-	 * @methodtype get method
-	 * @methodproperties composed method
+	 * @methodtype get
 	 */
 	@Override
-	public Photo getPhotoFromId(PhotoId id) {
-		if (id == null) {
-			return null;
-		}
-
-		Photo result = doGetPhotoFromId(id);
-
-		if (result == null) {
-			result = FishPhotoFactory.getInstance().loadPhoto(id);
-			if (result != null) {
-				doAddPhoto(result);
-			}
-		}
-
-		return result;
+	protected PhotoFactory getPhotoFactory() {
+		return FishPhotoFactory.getInstance();
 	}
 
 }// end of FishPhotoManager
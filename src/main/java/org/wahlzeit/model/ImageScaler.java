@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import org.wahlzeit.services.LogBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Abstract super class for all engines that scale uploaded images to the sizes needed by the app.
+ */
+public abstract class ImageScaler {
+
+	private static final Logger log = Logger.getLogger(ImageScaler.class.getName());
+	private static ImageScaler instance = null;
+
+	/**
+	 * Defaults to the App Engine images service if no other scaler has been set.
+	 *
+	 * @methodtype get
+	 */
+	public static synchronized ImageScaler getInstance() {
+		if (instance == null) {
+			setInstance(new AppEngineImageScaler());
+		}
+		return instance;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public static synchronized void setInstance(ImageScaler newInstance) {
+		log.config(LogBuilder.createSystemMessage().
+				addAction("set ImageScaler instance").
+				addParameter("instance", newInstance).toString());
+		instance = newInstance;
+	}
+
+	/**
+	 * Scales the source image, which is sourceWidth x sourceHeight pixels, to each of the given sizes. The source
+	 * image is not modified.
+	 *
+	 * @methodtype factory
+	 * @methodproperty wrapper
+	 */
+	public Map<PhotoSize, Image> scaleImage(Image source, int sourceWidth, int sourceHeight,
+											Collection<PhotoSize> sizes) throws Exception {
+		if (source == null) {
+			throw new IllegalArgumentException("Image = null!");
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("scale image").
+				addParameter("scaler", getClass().getSimpleName()).
+				addParameter("sizes", sizes.toString()).toString());
+
+		return doScaleImage(source, sourceWidth, sourceHeight, sizes);
+	}
+
+	/**
+	 * @methodtype factory
+	 * @methodproperty hook
+	 */
+	protected abstract Map<PhotoSize, Image> doScaleImage(Image source, int sourceWidth, int sourceHeight,
+														  Collection<PhotoSize> sizes) throws Exception;
+
+}
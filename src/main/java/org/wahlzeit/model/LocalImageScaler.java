@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.wahlzeit.services.LogBuilder;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Scales images in-process with javax.imageio, for deployments without the App Engine images service. The source is
+ * decoded once; sizes are produced from largest to smallest, each derived from the previous one. Downsampling
+ * averages the covered source area, halving repeatedly while the image is at least twice the target size.
+ */
+public class LocalImageScaler extends ImageScaler {
+
+	private static final Logger log = Logger.getLogger(LocalImageScaler.class.getName());
+
+	/**
+	 *
+	 */
+	protected static final String DEFAULT_FORMAT = "png";
+
+	@Override
+	protected Map<PhotoSize, Image> doScaleImage(Image source, int sourceWidth, int sourceHeight,
+												 Collection<PhotoSize> sizes) throws Exception {
+		Map<PhotoSize, Image> result = new EnumMap<PhotoSize, Image>(PhotoSize.class);
+
+		String formatName = getFormatName(source.getImageData());
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(source.getImageData()));
+		if (decoded == null) {
+			throw new IOException("could not decode image");
+		}
+		boolean hasAlpha = decoded.getColorModel().hasAlpha() && !"jpeg".equals(formatName);
+
+		Pixels current = Pixels.fromImage(decoded);
+		Pixels scratch = new Pixels();
+		Pixels next = new Pixels();
+
+		for (PhotoSize size : new TreeSet<PhotoSize>(sizes).descendingSet()) {
+			int targetWidth = size.calcAdjustedWidth(sourceWidth, sourceHeight);
+			int targetHeight = size.calcAdjustedHeight(sourceWidth, sourceHeight);
+
+			// halving steps alternate between the scratch buffers, which are reused for all sizes
+			while (current.width >= 2 * targetWidth && current.height >= 2 * targetHeight) {
+				Pixels half = (current == scratch) ? next : scratch;
+				current.halveInto(half);
+				current = half;
+			}
+
+			Pixels scaled = new Pixels(targetWidth, targetHeight);
+			current.averageInto(scaled);
+			result.put(size, ImagesServiceFactory.makeImage(encode(scaled, hasAlpha, formatName)));
+			current = scaled;
+
+			log.config(LogBuilder.createSystemMessage().addParameter("Scaled image to size", size.asString()).toString());
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected String getFormatName(byte[] data) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (readers.hasNext()) {
+				String result = readers.next().getFormatName().toLowerCase();
+				if (ImageIO.getImageWritersByFormatName(result).hasNext()) {
+					return "jpg".equals(result) ? "jpeg" : result;
+				}
+			}
+			return DEFAULT_FORMAT;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected byte[] encode(Pixels pixels, boolean hasAlpha, String formatName) throws IOException {
+		int type = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage image = new BufferedImage(pixels.width, pixels.height, type);
+		int[] target = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(pixels.data, 0, target, 0, pixels.width * pixels.height);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, formatName, output)) {
+			throw new IOException("no writer for image format " + formatName);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Packed ARGB pixels; the data array may be larger than needed, so it can be reused for smaller images.
+	 */
+	protected static class Pixels {
+
+		protected int width;
+		protected int height;
+		protected int[] data = new int[0];
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Pixels() {
+		}
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Pixels(int myWidth, int myHeight) {
+			resize(myWidth, myHeight);
+		}
+
+		/**
+		 * @methodtype factory
+		 */
+		protected static Pixels fromImage(BufferedImage image) {
+			Pixels result = new Pixels(image.getWidth(), image.getHeight());
+			image.getRGB(0, 0, result.width, result.height, result.data, 0, result.width);
+			return result;
+		}
+
+		/**
+		 * @methodtype set
+		 */
+		protected void resize(int newWidth, int newHeight) {
+			width = newWidth;
+			height = newHeight;
+			if (data.length < newWidth * newHeight) {
+				data = new int[newWidth * newHeight];
+			}
+		}
+
+		/**
+		 * Averages each block of 2 x 2 pixels into one target pixel; an odd last row or column is dropped.
+		 *
+		 * @methodtype command
+		 */
+		protected void halveInto(Pixels target) {
+			target.resize(width / 2, height / 2);
+			for (int y = 0; y < target.height; y++) {
+				int row = 2 * y * width;
+				for (int x = 0; x < target.width; x++) {
+					int i = row + 2 * x;
+					target.data[y * target.width + x] =
+							average4(data[i], data[i + 1], data[i + width], data[i + width + 1]);
+				}
+			}
+		}
+
+		/**
+		 * @methodtype helper
+		 */
+		protected static int average4(int p1, int p2, int p3, int p4) {
+			int result = 0;
+			for (int shift = 0; shift < 32; shift += 8) {
+				int sum = ((p1 >>> shift) & 0xff) + ((p2 >>> shift) & 0xff) + ((p3 >>> shift) & 0xff) +
+						((p4 >>> shift) & 0xff);
+				result |= ((sum + 2) >> 2) << shift;
+			}
+			return result;
+		}
+
+		/**
+		 * Scales to the size of the target, which must not be larger, by averaging the source area each target
+		 * pixel covers, including fractions of pixels at its borders; first horizontally, then vertically.
+		 *
+		 * @methodtype command
+		 */
+		protected void averageInto(Pixels target) {
+			float[] rows = new float[4 * target.width * height];
+			float xScale = (float) width / target.width;
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < target.width; x++) {
+					float start = x * xScale;
+					float end = start + xScale;
+					int offset = 4 * (y * target.width + x);
+					for (int sx = (int) start; sx < end && sx < width; sx++) {
+						float weight = Math.min(end, sx + 1) - Math.max(start, sx);
+						addWeighted(rows, offset, data[y * width + sx], weight);
+					}
+				}
+			}
+
+			float yScale = (float) height / target.height;
+			float[] sum = new float[4];
+			for (int y = 0; y < target.height; y++) {
+				float start = y * yScale;
+				float end = start + yScale;
+				for (int x = 0; x < target.width; x++) {
+					sum[0] = sum[1] = sum[2] = sum[3] = 0;
+					for (int sy = (int) start; sy < end && sy < height; sy++) {
+						float weight = Math.min(end, sy + 1) - Math.max(start, sy);
+						int offset = 4 * (sy * target.width + x);
+						for (int c = 0; c < 4; c++) {
+							sum[c] += rows[offset + c] * weight;
+						}
+					}
+					int pixel = 0;
+					for (int c = 0; c < 4; c++) {
+						int value = Math.round(sum[c] / (xScale * yScale));
+						pixel |= Math.max(0, Math.min(255, value)) << (8 * c);
+					}
+					target.data[y * target.width + x] = pixel;
+				}
+			}
+		}
+
+		/**
+		 * @methodtype helper
+		 */
+		protected static void addWeighted(float[] channels, int offset, int pixel, float weight) {
+			for (int c = 0; c < 4; c++) {
+				channels[offset + c] += ((pixel >>> (8 * c)) & 0xff) * weight;
+			}
+		}
+	}
+
+}
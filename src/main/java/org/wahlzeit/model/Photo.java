@@ -26,13 +26,20 @@ import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Ignore;
+import com.googlecode.objectify.annotation.Index;
 import com.googlecode.objectify.annotation.Parent;
+import org.wahlzeit.model.persistence.ImageCache;
 import org.wahlzeit.services.DataObject;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.ObjectManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * A photo represents a user-provided (uploaded) photo.
@@ -44,6 +51,7 @@ public class Photo extends DataObject {
 	 *
 	 */
 	public static final String IMAGE = "image";
+	public static final String IMAGE_VERSION = "v";
 	public static final String THUMB = "thumb";
 	public static final String LINK = "link";
 	public static final String PRAISE = "praise";
@@ -59,6 +67,8 @@ public class Photo extends DataObject {
 	public static final String IS_INVISIBLE = "isInvisible";
 	public static final String UPLOADED_ON = "uploadedOn";
 
+	public static final String ID_VALUE = "id.value";
+
 	/**
 	 *
 	 */
@@ -67,6 +77,16 @@ public class Photo extends DataObject {
 	public static final int MAX_THUMB_PHOTO_WIDTH = 105;
 	public static final int MAX_THUMB_PHOTO_HEIGHT = 150;
 
+	/**
+	 * Field groups for incWriteCount(int), so that saving a photo only updates what depends on the changed fields
+	 */
+	public static final int COUNTER_FIELDS = 1;
+	public static final int TAG_FIELDS = 1 << 1;
+	public static final int STATUS_FIELDS = 1 << 2;
+	public static final int IMAGE_FIELDS = 1 << 3;
+	public static final int OWNER_FIELDS = 1 << 4;
+
+	@Index
 	protected PhotoId id = null;
 	
 	/**
@@ -94,11 +114,43 @@ public class Photo extends DataObject {
 	protected int width;
 	protected int height;
 	protected PhotoSize maxPhotoSize = PhotoSize.MEDIUM; // derived
+
+	/**
+	 * Rendition manifest: bit i is set if the image of PhotoSize i has been written to the image storage; 0 means
+	 * unknown, e.g. for photos persisted before the manifest existed
+	 */
+	protected int storedImageSizes = 0;
+
+	/**
+	 * CRC-32 checksums of the image contents, indexed by PhotoSize; used as HTTP cache validators, 0 means unknown
+	 */
+	protected List<Long> imageChecksums = new ArrayList<Long>();
+
+	/**
+	 * Number of bytes of the image contents, indexed by PhotoSize; 0 means unknown
+	 */
+	protected List<Long> imageLengths = new ArrayList<Long>();
+
+	/**
+	 * Time of the last change of an image content; 0 means unknown, then the creation time applies
+	 */
+	protected long imageModificationTime = 0;
+
+	/**
+	 * True while the images of the photo are still being created from the original in the background
+	 */
+	protected boolean renditionsPending = false;
 	
 	/**
 	 *
 	 */
 	protected Tags tags = Tags.EMPTY_TAGS;
+
+	/**
+	 * The texts of the photo's Tag entities as last loaded or written; none for a new photo
+	 */
+	@Ignore
+	protected Set<String> storedTags = Collections.emptySet();
 	
 	/**
 	 *
@@ -110,7 +162,28 @@ public class Photo extends DataObject {
 	 */
 	protected int praiseSum = 10;
 	protected int noVotes = 1;
-	protected int noVotesAtLastNotification = 1;
+	protected long noVotesAtLastNotification = 1;
+
+	/**
+	 * Praise read from the photo's PraiseShards, kept apart from the initial praise above; it is stored in the
+	 * photo's PraiseTotal, not with the photo, so that saving the photo never overwrites it
+	 */
+	@Ignore
+	protected long shardedPraiseSum = 0;
+	@Ignore
+	protected long shardedNoVotes = 0;
+
+	/**
+	 * Praise counted in this instance but not yet read from the shards; kept with the photo in the session
+	 */
+	@Ignore
+	protected PraiseCounter pendingPraise = new PraiseCounter();
+
+	/**
+	 * Time the sharded praise was last read, see PraiseCounterManager.refreshPraise()
+	 */
+	@Ignore
+	transient protected long praiseRefreshTime = 0;
 	
 	/**
 	 *
@@ -156,17 +229,226 @@ public class Photo extends DataObject {
 	}
 
 	/**
+	 * Returns the image of the given size. Images of persisted photos that are not held by the photo are loaded on
+	 * demand via the image cache.
+	 *
 	 * @methodtype get
 	 */
 	public Image getImage(PhotoSize photoSize) {
+		Image result = images.get(photoSize);
+		if (result == null && idLong != null && (!hasImageManifest() || hasStoredImage(photoSize))) {
+			result = ImageCache.getInstance().getImage(id.asString(), photoSize);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasImageManifest() {
+		return storedImageSizes != 0;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasStoredImage(PhotoSize photoSize) {
+		return (storedImageSizes & (1 << photoSize.asInt())) != 0;
+	}
+
+	/**
+	 * Records in the rendition manifest that the image of the given size is in the image storage.
+	 *
+	 * @methodtype command
+	 */
+	public void addStoredImage(PhotoSize photoSize) {
+		if (!hasStoredImage(photoSize)) {
+			storedImageSizes |= 1 << photoSize.asInt();
+			incWriteCount(IMAGE_FIELDS);
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasPendingRenditions() {
+		return renditionsPending;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setRenditionsPending(boolean newRenditionsPending) {
+		renditionsPending = newRenditionsPending;
+		incWriteCount(IMAGE_FIELDS);
+	}
+
+	/**
+	 * Tells whether the image of the given size can be shown; while renditions are pending, only those created
+	 * already can.
+	 *
+	 * @methodtype boolean-query
+	 */
+	public boolean isImageAvailable(PhotoSize photoSize) {
+		if (!renditionsPending) {
+			return hasPhotoSize(photoSize);
+		}
+		return images.containsKey(photoSize) || hasStoredImage(photoSize);
+	}
+
+	/**
+	 * Returns the largest available size that is not larger than the wanted one, or else the smallest available
+	 * size; null if no image is available yet.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoSize getBestAvailableSize(PhotoSize wantedSize) {
+		PhotoSize result = null;
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			if (!isImageAvailable(photoSize)) {
+				continue;
+			}
+			if (!wantedSize.isSmaller(photoSize)) {
+				result = photoSize;
+			} else if (result == null) {
+				return photoSize;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the image only if it is held by the photo itself, e.g. because it has just been uploaded.
+	 *
+	 * @methodtype get
+	 */
+	public Image getLoadedImage(PhotoSize photoSize) {
 		return images.get(photoSize);
 	}
 
+	/**
+	 * Holds an image that has been read from the image storage. Nothing has to be saved for that, so the photo is
+	 * not marked as changed; what it did not know about the image yet, e.g. because it was persisted before the
+	 * rendition manifest existed, is only saved with its next change.
+	 *
+	 * @methodtype set
+	 */
+	public void setLoadedImage(PhotoSize photoSize, Image image) {
+		this.images.put(photoSize, image);
+		storedImageSizes |= 1 << photoSize.asInt();
+		if (getImageChecksum(photoSize) == 0) {
+			imageChecksums = setSizeValue(imageChecksums, photoSize, computeChecksum(image));
+		}
+		if (getSizeValue(imageLengths, photoSize) == 0 && image.getImageData() != null) {
+			imageLengths = setSizeValue(imageLengths, photoSize, image.getImageData().length);
+		}
+	}
+
 	/**
 	 * @methodtype set
 	 */
 	public void setImage(PhotoSize photoSize, Image image) {
 		this.images.put(photoSize, image);
+		setImageChecksum(photoSize, computeChecksum(image));
+		setImageLength(photoSize, image.getImageData() != null ? image.getImageData().length : 0);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getImageChecksum(PhotoSize photoSize) {
+		return getSizeValue(imageChecksums, photoSize);
+	}
+
+	/**
+	 * Returns the number of bytes of the image of the given size, or -1 if it is unknown.
+	 *
+	 * @methodtype get
+	 */
+	public long getImageLength(PhotoSize photoSize) {
+		long length = getSizeValue(imageLengths, photoSize);
+		return length != 0 ? length : -1;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	protected void setImageLength(PhotoSize photoSize, long length) {
+		if (getSizeValue(imageLengths, photoSize) != length) {
+			imageLengths = setSizeValue(imageLengths, photoSize, length);
+			incWriteCount(IMAGE_FIELDS);
+		}
+	}
+
+	/**
+	 * Returns when the content of an image of the photo was last changed.
+	 *
+	 * @methodtype get
+	 */
+	public long getImageModificationTime() {
+		return imageModificationTime != 0 ? imageModificationTime : creationTime;
+	}
+
+	/**
+	 * Returns a version string of the image content of the given size, or null if it is unknown.
+	 *
+	 * @methodtype get
+	 */
+	public String getImageVersion(PhotoSize photoSize) {
+		long checksum = getImageChecksum(photoSize);
+		return checksum != 0 ? Long.toHexString(checksum) : null;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	protected void setImageChecksum(PhotoSize photoSize, long checksum) {
+		if (getImageChecksum(photoSize) == checksum) {
+			return;
+		}
+		imageChecksums = setSizeValue(imageChecksums, photoSize, checksum);
+		imageModificationTime = System.currentTimeMillis();
+		incWriteCount(IMAGE_FIELDS);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static long getSizeValue(List<Long> values, PhotoSize photoSize) {
+		int index = photoSize.asInt();
+		if (values == null || index >= values.size()) {
+			return 0;
+		}
+		Long result = values.get(index);
+		return result != null ? result : 0;
+	}
+
+	/**
+	 * Returns the list with the value of the given size set; the list is created or grown as needed.
+	 *
+	 * @methodtype helper
+	 */
+	protected static List<Long> setSizeValue(List<Long> values, PhotoSize photoSize, long value) {
+		List<Long> result = (values != null) ? values : new ArrayList<Long>();
+		while (result.size() <= photoSize.asInt()) {
+			result.add(0L);
+		}
+		result.set(photoSize.asInt(), value);
+		return result;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static long computeChecksum(Image image) {
+		byte[] data = image.getImageData();
+		if (data == null) {
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		// 0 is reserved for unknown checksums
+		return crc.getValue() != 0 ? crc.getValue() : 1;
 	}
 
 	/**
@@ -195,7 +477,7 @@ public class Photo extends DataObject {
 	 */
 	public void setOwnerId(String newName) {
 		ownerId = newName;
-		incWriteCount();
+		incWriteCount(OWNER_FIELDS);
 	}
 
 	/**
@@ -225,7 +507,7 @@ public class Photo extends DataObject {
 	 */
 	public void setOwnerNotifyAboutPraise(boolean newNotifyAboutPraise) {
 		ownerNotifyAboutPraise = newNotifyAboutPraise;
-		incWriteCount();
+		incWriteCount(OWNER_FIELDS);
 	}
 
 	/**
@@ -240,7 +522,7 @@ public class Photo extends DataObject {
 	 */
 	public void setOwnerLanguage(Language newLanguage) {
 		ownerLanguage = newLanguage;
-		incWriteCount();
+		incWriteCount(OWNER_FIELDS);
 	}
 
 	/**
@@ -262,7 +544,7 @@ public class Photo extends DataObject {
 	 */
 	public void setOwnerEmailAddress(EmailAddress newEmailAddress) {
 		ownerEmailAddress = newEmailAddress;
-		incWriteCount();
+		incWriteCount(OWNER_FIELDS);
 	}
 
 	/**
@@ -309,7 +591,7 @@ public class Photo extends DataObject {
 
 		maxPhotoSize = PhotoSize.getFromWidthHeight(width, height);
 
-		incWriteCount();
+		incWriteCount(IMAGE_FIELDS);
 	}
 
 	/**
@@ -339,16 +621,74 @@ public class Photo extends DataObject {
 	 * @methodtype get
 	 */
 	public double getPraise() {
-		return (double) praiseSum / noVotes;
+		long sum = praiseSum + shardedPraiseSum + pendingPraise.getSum();
+		return (double) sum / getNoVotes();
 	}
 
 	/**
+	 * @methodtype get
+	 */
+	public long getNoVotes() {
+		return noVotes + shardedNoVotes + pendingPraise.getNoVotes();
+	}
+
+	/**
+	 * @methodtype command
 	 *
+	 * Counts the vote in memory only; the vote itself is stored through PraiseCounterManager.addPraise(), so the
+	 * photo is not marked as changed.
 	 */
 	public void addToPraise(int value) {
-		praiseSum += value;
-		noVotes += 1;
-		incWriteCount();
+		pendingPraise.add(value);
+		PhotoLeaderboard.getInstance().updatePhoto(this);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPendingPraiseSum() {
+		return pendingPraise.getSum();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPendingNoVotes() {
+		return pendingPraise.getNoVotes();
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Takes over the praise read from the shards. The pending praise taken before the shards were read is included
+	 * in what has been read, so only that is dropped; votes counted meanwhile stay pending. A total with fewer votes
+	 * than the current one has been read before it, and is ignored. The sharded praise is not saved with the photo,
+	 * so the photo is not marked as changed.
+	 */
+	public synchronized void setShardedPraise(long newPraiseSum, long newNoVotes, long includedPendingSum,
+											  long includedPendingNoVotes) {
+		if (newNoVotes < shardedNoVotes) {
+			return;
+		}
+
+		pendingPraise.add(-includedPendingSum, -includedPendingNoVotes);
+		shardedPraiseSum = newPraiseSum;
+		shardedNoVotes = newNoVotes;
+		PhotoLeaderboard.getInstance().updatePhoto(this);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPraiseRefreshTime() {
+		return praiseRefreshTime;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setPraiseRefreshTime(long newPraiseRefreshTime) {
+		praiseRefreshTime = newPraiseRefreshTime;
 	}
 
 	/**
@@ -370,7 +710,7 @@ public class Photo extends DataObject {
 	 */
 	public void setStatus(PhotoStatus newStatus) {
 		status = newStatus;
-		incWriteCount();
+		incWriteCount(STATUS_FIELDS);
 	}
 
 	/**
@@ -392,7 +732,21 @@ public class Photo extends DataObject {
 	 */
 	public void setTags(Tags newTags) {
 		tags = newTags;
-		incWriteCount();
+		incWriteCount(TAG_FIELDS);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Set<String> getStoredTags() {
+		return storedTags;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setStoredTags(Set<String> newStoredTags) {
+		storedTags = newStoredTags;
 	}
 
 	/**
@@ -415,15 +769,15 @@ public class Photo extends DataObject {
 	 * @methodtype boolean query
 	 */
 	public boolean hasNewPraise() {
-		return noVotes > noVotesAtLastNotification;
+		return getNoVotes() > noVotesAtLastNotification;
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setNoNewPraise() {
-		noVotesAtLastNotification = noVotes;
-		incWriteCount();
+		noVotesAtLastNotification = getNoVotes();
+		incWriteCount(COUNTER_FIELDS);
 	}
 	
 	
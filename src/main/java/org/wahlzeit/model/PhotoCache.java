@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded in-memory cache for photos with least-recently-used eviction.
+ *
+ * Photos that have not been written to the datastore yet (dirty photos) are never evicted, as they can not be
+ * reloaded. Hence the cache may temporarily exceed its capacity until these photos have been saved.
+ */
+public class PhotoCache {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_CAPACITY = 2000;
+
+	/**
+	 * Access-ordered, so the eldest entry is the least recently used one; guarded by this
+	 */
+	protected final LinkedHashMap<PhotoId, Photo> photos = new LinkedHashMap<PhotoId, Photo>(64, 0.75f, true);
+
+	/**
+	 *
+	 */
+	protected int capacity;
+
+	/**
+	 *
+	 */
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+	protected final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public PhotoCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PhotoCache(int myCapacity) {
+		assertIsValidCapacity(myCapacity);
+		capacity = myCapacity;
+	}
+
+	/**
+	 * Returns the cached photo or null; counts the lookup as hit or miss.
+	 *
+	 * @methodtype get
+	 */
+	public Photo get(PhotoId id) {
+		Photo result;
+		synchronized (this) {
+			result = photos.get(id);
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public synchronized boolean contains(PhotoId id) {
+		return photos.containsKey(id);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void put(Photo photo) {
+		photos.put(photo.getId(), photo);
+		evictIfNecessary();
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized Photo remove(PhotoId id) {
+		return photos.remove(id);
+	}
+
+	/**
+	 * Evicts least recently used photos that are not dirty until the capacity is respected again.
+	 *
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected void evictIfNecessary() {
+		Iterator<Photo> i = photos.values().iterator();
+		while ((photos.size() > capacity) && i.hasNext()) {
+			Photo candidate = i.next();
+			if (!candidate.isDirty()) {
+				i.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int size() {
+		return photos.size();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public synchronized boolean isFull() {
+		return photos.size() >= capacity;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public synchronized void setCapacity(int newCapacity) {
+		assertIsValidCapacity(newCapacity);
+		capacity = newCapacity;
+		evictIfNecessary();
+	}
+
+	/**
+	 * Returns a snapshot of all cached photos; iterating over it does not affect the eviction order.
+	 *
+	 * @methodtype get
+	 */
+	public synchronized Collection<Photo> getPhotos() {
+		return new ArrayList<Photo>(photos.values());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized Set<PhotoId> getPhotoIds() {
+		return new HashSet<PhotoId>(photos.keySet());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized Map<PhotoId, Photo> asMap() {
+		return new LinkedHashMap<PhotoId, Photo>(photos);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsValidCapacity(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("photo cache capacity must be positive: " + capacity);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public String asString() {
+		return "size=" + size() + ", capacity=" + getCapacity() + ", hits=" + getHitCount() +
+				", misses=" + getMissCount() + ", evictions=" + getEvictionCount();
+	}
+
+}
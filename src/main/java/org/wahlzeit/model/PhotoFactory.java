@@ -21,6 +21,8 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.utils.PatternInstance;
 
 import java.util.logging.Logger;
@@ -103,19 +105,29 @@ public class PhotoFactory {
 	}
 
 	/**
-	 * Loads a photo. The Java object is loaded from the Google Datastore, the Images in all sizes are loaded from the
-	 * Google Cloud storage.
+	 * Loads a photo by its photo id, e.g. one that another instance created after this one has started. The images
+	 * are not loaded by this method.
 	 */
 	public Photo loadPhoto(PhotoId id) {
-	   /* Photo result =
-                OfyService.ofy().load().type(Photo.class).ancestor(KeyFactory.createKey("Application", "Wahlzeit")).filter(Photo.ID, id).first().now();
-        for (PhotoSize size : PhotoSize.values()) {
-            GcsFilename gcsFilename = new GcsFilename("picturebucket", filename);
-
+		log.config(LogBuilder.createSystemMessage().addAction("load photo").
+				addParameter("photo ID", id.asString()).toString());
+		return OfyService.ofy().load().type(Photo.class).ancestor(ObjectManager.applicationRootKey).
+				filter(Photo.ID_VALUE, id.asInt()).first().now();
+	}
 
+	/**
+	 * Loads a photo by its datastore id; used to reload photos that have been evicted from the photo cache. The
+	 * images are not loaded by this method.
+	 */
+	public Photo loadPhoto(PhotoId id, Long datastoreId) {
+		if (datastoreId == null) {
+			return loadPhoto(id);
+		}
 
-        }*/
-		return null;
+		log.config(LogBuilder.createSystemMessage().addAction("load photo").
+				addParameter("photo ID", id.asString()).toString());
+		return OfyService.ofy().load().type(Photo.class).parent(ObjectManager.applicationRootKey).
+				id(datastoreId).now();
 	}
 
 
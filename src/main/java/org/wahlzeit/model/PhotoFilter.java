@@ -25,8 +25,8 @@ import org.wahlzeit.utils.StringUtil;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
@@ -54,9 +54,14 @@ public class PhotoFilter implements Serializable {
 	/**
 	 *
 	 */
-	protected List<PhotoId> displayablePhotoIds;
-	protected List<PhotoId> processedPhotoIds = new LinkedList<PhotoId>();
-	protected List<PhotoId> skippedPhotoIds = new LinkedList<PhotoId>();
+	protected PhotoSampler displayablePhotoIds = new PhotoSampler();
+	protected PhotoIdSet processedPhotoIds = new PhotoIdSet();
+	protected PhotoIdSet skippedPhotoIds = new PhotoIdSet();
+
+	/**
+	 * Version of the photo set the displayable photo ids were computed from; -1 forces a rebuild
+	 */
+	protected int photoSetVersion = -1;
 
 	/**
 	 *
@@ -137,50 +142,51 @@ public class PhotoFilter implements Serializable {
 	}
 
 	/**
+	 * Rebuilds the displayable photo ids, but only if the filter or the set of photos changed since the last time.
+	 *
 	 * @methodtype command
 	 */
 	public void generateDisplayablePhotoIds() {
-		displayablePhotoIds = getFilteredPhotoIds();
+		int currentVersion = FishPhotoManager.getInstance().getPhotoSetVersion();
+		if (photoSetVersion != currentVersion) {
+			displayablePhotoIds.rebuild(getFilteredPhotoIds(), processedPhotoIds, skippedPhotoIds);
+			photoSetVersion = currentVersion;
+		}
 	}
 
 	/**
 	 * Get a random photo that has not been rated. If possible avoid skipped photos.
 	 */
 	public PhotoId getRandomDisplayablePhotoId() {
-		if (!displayablePhotoIds.isEmpty()) {
-			int size = displayablePhotoIds.size();
-			int index = ((randomNumber.nextInt() % size) + size) / 2;
-			return displayablePhotoIds.get(index);
-		} else {
-			return PhotoId.NULL_ID;
-		}
+		return displayablePhotoIds.pick(randomNumber, processedPhotoIds, skippedPhotoIds);
 	}
 
 	/**
 	 *
 	 */
 	public List<PhotoId> getDisplayablePhotoIds() {
-		return displayablePhotoIds;
+		return displayablePhotoIds.asList();
 	}
 
 	/**
 	 *
 	 */
 	public void setDisplayablePhotoIds(List<PhotoId> newPhotoIds) {
-		displayablePhotoIds = newPhotoIds;
+		displayablePhotoIds.rebuild(newPhotoIds, processedPhotoIds, skippedPhotoIds);
 	}
 
 	/**
 	 *
 	 */
 	public void resetDisplayablePhotoIds() {
-		displayablePhotoIds = new ArrayList<PhotoId>();
+		displayablePhotoIds.clear();
+		photoSetVersion = -1;
 	}
 
 	/**
 	 *
 	 */
-	public List<PhotoId> getProcessedPhotoIds() {
+	public PhotoIdSet getProcessedPhotoIds() {
 		return processedPhotoIds;
 	}
 
@@ -188,10 +194,6 @@ public class PhotoFilter implements Serializable {
 	 *
 	 */
 	public boolean isProcessedPhotoId(PhotoId photoId) {
-		log.info("photoId: " + photoId.asString());
-		for (PhotoId id : processedPhotoIds) {
-			log.info("Processed id: " + id.asString());
-		}
 		return processedPhotoIds.contains(photoId);
 	}
 
@@ -200,25 +202,23 @@ public class PhotoFilter implements Serializable {
 	 */
 	public void addProcessedPhoto(Photo photo) {
 		PhotoId photoId = photo.getId();
+		// the photo leaves the displayable photo ids lazily, when it is picked next time
 		processedPhotoIds.add(photoId);
 		skippedPhotoIds.remove(photoId);
-		if (displayablePhotoIds != null) {
-			displayablePhotoIds.remove(photoId);
-		}
 	}
 
 
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getSkippedPhotoIds() {
+	public PhotoIdSet getSkippedPhotoIds() {
 		return skippedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setSkippedPhotoIds(List<PhotoId> skippedPhotoIds) {
+	public void setSkippedPhotoIds(PhotoIdSet skippedPhotoIds) {
 		this.skippedPhotoIds = skippedPhotoIds;
 	}
 
@@ -226,52 +226,39 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype set
 	 */
 	public void addSkippedPhotoId(PhotoId skippedPhotoId) {
-		if (!skippedPhotoIds.contains(skippedPhotoId)) {
-			skippedPhotoIds.add(skippedPhotoId);
-		}
+		skippedPhotoIds.add(skippedPhotoId);
 	}
 
 	/**
-	 *
+	 * Returns all visible photos that match the filter conditions; processed and skipped ones are sorted out by
+	 * the displayable photo ids.
 	 */
 	protected List<PhotoId> getFilteredPhotoIds() {
 		// get all tags that match the filter conditions
-		List<PhotoId> result = new LinkedList<PhotoId>();
+		List<PhotoId> result = new ArrayList<PhotoId>();
 		int noFilterConditions = getFilterConditions().size();
 		log.config(LogBuilder.createSystemMessage().
 				addParameter("Number of filter conditions", String.valueOf(noFilterConditions)).toString());
 
 		Collection<PhotoId> candidates;
 		if (noFilterConditions == 0) {
-			candidates = FishPhotoManager.getInstance().getPhotoCache().keySet();
+			candidates = FishPhotoManager.getInstance().getPhotoIds();
 		} else {
-			List<Tag> tags = new LinkedList<Tag>();
-			candidates = new LinkedList<PhotoId>();
-			for (String condition : getFilterConditions()) {
-				FishPhotoManager.getInstance().addTagsThatMatchCondition(tags, condition);
-			}
-			// get the list of all photo ids that correspond to the tags
-			for (Tag tag : tags) {
-				candidates.add(PhotoId.getIdFromString(tag.getPhotoId()));
+			// photos have to match all filter conditions
+			BitSet matches = FishPhotoManager.getInstance().getPhotoIdsMatchingAll(getFilterConditions());
+			candidates = new ArrayList<PhotoId>(matches.cardinality());
+			for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+				candidates.add(PhotoId.getIdFromInt(i));
 			}
 		}
 
-		int newPhotos = 0;
 		for (PhotoId candidateId : candidates) {
-			Photo photoCandidate = FishPhotoManager.getInstance().getPhoto(candidateId);
-			if (!processedPhotoIds.contains(candidateId) && !skippedPhotoIds.contains(candidateId) &&
-					photoCandidate.isVisible()) {
+			if (FishPhotoManager.getInstance().isVisiblePhoto(candidateId)) {
 				result.add(candidateId);
-				++newPhotos;
 			}
 		}
-		int skippedPhotos = skippedPhotoIds.size();
-		if (newPhotos == 0 && skippedPhotos > 0) {
-			result.addAll(skippedPhotoIds);
-			newPhotos = skippedPhotos;
-		}
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Number of photos to show", newPhotos)
+		log.config(LogBuilder.createSystemMessage().addParameter("Number of photos to show", result.size())
 				.toString());
 
 		return result;
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A compact set of photo ids, stored as a bitmap over PhotoId.asInt(). Membership tests, additions and removals take
+ * constant time; the set is small enough to be kept in the HttpSession.
+ */
+public class PhotoIdSet implements Serializable {
+
+	/**
+	 *
+	 */
+	protected BitSet bits = new BitSet();
+	protected int size = 0;
+
+	/**
+	 *
+	 */
+	public PhotoIdSet() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(PhotoId id) {
+		return bits.get(id.asInt());
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(int id) {
+		return bits.get(id);
+	}
+
+	/**
+	 * @methodtype command
+	 * @return true if the id was not yet contained
+	 */
+	public boolean add(PhotoId id) {
+		int value = id.asInt();
+		if (bits.get(value)) {
+			return false;
+		}
+
+		bits.set(value);
+		size++;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 * @return true if the id was contained
+	 */
+	public boolean remove(PhotoId id) {
+		int value = id.asInt();
+		if (!bits.get(value)) {
+			return false;
+		}
+
+		bits.clear(value);
+		size--;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		bits.clear();
+		size = 0;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the ids in ascending order.
+	 *
+	 * @methodtype conversion
+	 */
+	public List<PhotoId> asList() {
+		List<PhotoId> result = new ArrayList<PhotoId>(size);
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			result.add(PhotoId.getIdFromInt(i));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The PhotoLeaderboard singleton ranks the visible photos by praise, globally and per tag. It is updated
+ * incrementally whenever a photo's praise, tags, or status change, so showing the best photos costs O(k) rather
+ * than sorting all photos.
+ */
+public class PhotoLeaderboard {
+
+	/**
+	 * Number of photos kept per ranking; more than are shown, so that photos just below the top remain known
+	 */
+	public static final int RANKING_CAPACITY = 100;
+
+	/**
+	 *
+	 */
+	protected static final String[] NO_TAGS = new String[0];
+
+	/**
+	 *
+	 */
+	protected static final PhotoLeaderboard instance = new PhotoLeaderboard();
+
+	/**
+	 * @methodtype get
+	 */
+	public static PhotoLeaderboard getInstance() {
+		return instance;
+	}
+
+	/**
+	 *
+	 */
+	protected final PhotoRanking globalRanking = new PhotoRanking(RANKING_CAPACITY);
+
+	/**
+	 *
+	 */
+	protected final ConcurrentMap<String, PhotoRanking> tagRankings = new ConcurrentHashMap<String, PhotoRanking>();
+
+	/**
+	 * Tags under which each photo is ranked, to take it out of rankings of tags it lost
+	 */
+	protected final ConcurrentMap<PhotoId, String[]> rankedTags = new ConcurrentHashMap<PhotoId, String[]>();
+
+	/**
+	 * @methodtype constructor
+	 */
+	protected PhotoLeaderboard() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void updatePhoto(Photo photo) {
+		PhotoId id = photo.getId();
+		if (id == null) {
+			return;
+		}
+
+		String[] tags = photo.isVisible() ? photo.getTags().asArray() : NO_TAGS;
+		String[] oldTags = rankedTags.put(id, tags);
+		if (oldTags != null) {
+			List<String> tagList = Arrays.asList(tags);
+			for (String oldTag : oldTags) {
+				PhotoRanking ranking = tagRankings.get(oldTag);
+				if ((ranking != null) && !tagList.contains(oldTag)) {
+					ranking.remove(id);
+				}
+			}
+		}
+
+		if (photo.isVisible()) {
+			PhotoRanking.Entry entry = new PhotoRanking.Entry(photo);
+			globalRanking.update(entry);
+			for (String tag : tags) {
+				getTagRanking(tag).update(entry);
+			}
+		} else {
+			globalRanking.remove(id);
+			rankedTags.remove(id);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public List<PhotoRanking.Entry> getTopPhotos(int k) {
+		return globalRanking.getTop(k);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public List<PhotoRanking.Entry> getTopPhotos(String tag, int k) {
+		PhotoRanking ranking = tagRankings.get(Tags.asTag(tag));
+		if (ranking == null) {
+			return Collections.emptyList();
+		}
+		return ranking.getTop(k);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected PhotoRanking getTagRanking(String tag) {
+		PhotoRanking result = tagRankings.get(tag);
+		if (result == null) {
+			PhotoRanking ranking = new PhotoRanking(RANKING_CAPACITY);
+			result = tagRankings.putIfAbsent(tag, ranking);
+			if (result == null) {
+				result = ranking;
+			}
+		}
+		return result;
+	}
+
+}
@@ -24,21 +24,32 @@ import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
 import org.wahlzeit.model.persistence.ImageStorage;
-import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
 import org.wahlzeit.services.Persistent;
+import org.wahlzeit.services.StructuredLogBuilder;
+import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.utils.PatternInstance;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -59,9 +70,36 @@ public class PhotoManager extends ObjectManager {
 	private static final Logger log = Logger.getLogger(PhotoManager.class.getName());
 
 	/**
-	 * In-memory cache for photos
+	 * Bounded in-memory cache for photos; evicted photos are reloaded on demand
 	 */
-	protected Map<PhotoId, Photo> photoCache = new HashMap<PhotoId, Photo>();
+	protected PhotoCache photoCache = new PhotoCache();
+
+	/**
+	 * Datastore ids of all persisted photos, so that evicted photos can be reloaded by key
+	 */
+	protected Map<PhotoId, Long> datastoreIds = new ConcurrentHashMap<PhotoId, Long>();
+
+	/**
+	 * Ids of all known photos and of the visible ones; kept independently of the cache
+	 */
+	protected Set<PhotoId> photoIds = Collections.newSetFromMap(new ConcurrentHashMap<PhotoId, Boolean>());
+	protected Set<PhotoId> visiblePhotoIds = Collections.newSetFromMap(new ConcurrentHashMap<PhotoId, Boolean>());
+
+	/**
+	 * Incremented whenever photos are added, change their visibility or their tags; lets photo filters detect that
+	 * their displayable photo ids are outdated
+	 */
+	protected AtomicInteger photoSetVersion = new AtomicInteger();
+
+	/**
+	 * Loads of evicted photos in progress, so that concurrent misses for the same id share one load
+	 */
+	protected ConcurrentMap<PhotoId, FutureTask<Photo>> photoLoads = new ConcurrentHashMap<PhotoId, FutureTask<Photo>>();
+
+	/**
+	 * Inverted index of all photo tags, kept in sync by updateTags()
+	 */
+	protected TagIndex tagIndex = new TagIndex();
 
 	/**
 	 *
@@ -114,15 +152,86 @@ public class PhotoManager extends ObjectManager {
 		Photo result = doGetPhotoFromId(id);
 
 		if (result == null) {
-			result = PhotoFactory.getInstance().loadPhoto(id);
-			if (result != null) {
-				doAddPhoto(result);
+			result = doLoadPhotoOnce(id);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Loads and caches an evicted photo; concurrent callers for the same id wait for the first caller's load
+	 * instead of loading their own copy.
+	 *
+	 * @methodtype command
+	 */
+	protected Photo doLoadPhotoOnce(final PhotoId id) {
+		FutureTask<Photo> load = new FutureTask<Photo>(new Callable<Photo>() {
+			public Photo call() {
+				// a load that finished just before this one was registered has already cached the photo
+				Photo result = doGetPhotoFromId(id);
+				if (result == null) {
+					result = doLoadPhoto(id);
+					if (result != null) {
+						doAddPhoto(result);
+					}
+				}
+				return result;
+			}
+		});
+
+		FutureTask<Photo> runningLoad = photoLoads.putIfAbsent(id, load);
+		if (runningLoad == null) {
+			runningLoad = load;
+			try {
+				load.run();
+			} finally {
+				photoLoads.remove(id, load);
 			}
 		}
 
+		try {
+			return runningLoad.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("could not load photo " + id.asString(), cause);
+		}
+	}
+
+	/**
+	 * Loads a photo that is not (or no longer) in the cache; this includes photos that other instances created after
+	 * this one has started.
+	 *
+	 * @methodtype command
+	 */
+	protected Photo doLoadPhoto(PhotoId id) {
+		Photo result = getPhotoFactory().loadPhoto(id, datastoreIds.get(id));
+		if (result != null) {
+			StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+					addParameter("Reload evicted Photo", id.asString()).log();
+			indexTags(result);
+			PraiseCounterManager.getInstance().loadPraiseTotals(Collections.singletonList(result));
+			if (!SysConfig.isLazyImageLoading()) {
+				loadScaledImages(result);
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	protected PhotoFactory getPhotoFactory() {
+		return PhotoFactory.getInstance();
+	}
+
 	/**
 	 * @methodtype get
 	 * @methodproperties primitive
@@ -136,7 +245,31 @@ public class PhotoManager extends ObjectManager {
 	 * @methodproperties primitive
 	 */
 	protected void doAddPhoto(Photo myPhoto) {
-		photoCache.put(myPhoto.getId(), myPhoto);
+		photoCache.put(myPhoto);
+		doRegisterPhoto(myPhoto);
+	}
+
+	/**
+	 * Records id, visibility, ranking and (once persisted) the datastore id of the photo.
+	 *
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected void doRegisterPhoto(Photo photo) {
+		PhotoId id = photo.getId();
+		boolean hasChanged = photoIds.add(id);
+		if (photo.isVisible()) {
+			hasChanged |= visiblePhotoIds.add(id);
+		} else {
+			hasChanged |= visiblePhotoIds.remove(id);
+		}
+		if (hasChanged) {
+			photoSetVersion.incrementAndGet();
+		}
+		if (photo.idLong != null) {
+			datastoreIds.put(id, photo.idLong);
+		}
+		PhotoLeaderboard.getInstance().updatePhoto(photo);
 	}
 
 	/**
@@ -150,6 +283,7 @@ public class PhotoManager extends ObjectManager {
 	 * @methodtype init Loads all Photos from the Datastore and holds them in the cache
 	 */
 	public void init() {
+		photoCache.setCapacity(SysConfig.getPhotoCacheCapacity());
 		loadPhotos();
 	}
 
@@ -164,63 +298,79 @@ public class PhotoManager extends ObjectManager {
 			public Collection<Photo> run() {
 				Collection<Photo> existingPhotos = new ArrayList<Photo>();
 				readObjects(existingPhotos, Photo.class);
+				PraiseCounterManager.getInstance().loadPraiseTotals(existingPhotos);
 				return existingPhotos;
 			}
 		});
 
+		boolean isLazyImageLoading = SysConfig.isLazyImageLoading();
 		for (Photo photo : existingPhotos) {
+			indexTags(photo);
 			if (!doHasPhoto(photo.getId())) {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Load Photo with ID", photo.getIdAsString()).toString());
-				loadScaledImages(photo);
-				doAddPhoto(photo);
+				StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+						addParameter("Load Photo with ID", photo.getIdAsString()).log();
+				if (photoCache.isFull()) {
+					// only remember the photo; it is loaded on first access
+					doRegisterPhoto(photo);
+				} else {
+					if (!isLazyImageLoading) {
+						loadScaledImages(photo);
+					}
+					doAddPhoto(photo);
+				}
 			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Already loaded Photo", photo.getIdAsString()).toString());
+				StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+						addParameter("Already loaded Photo", photo.getIdAsString()).log();
 			}
 		}
 
-		log.info(LogBuilder.createSystemMessage().addMessage("All photos loaded.").toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.INFO).addMessage("All photos loaded.").
+				addParameter("photo cache", photoCache.asString()).log();
 	}
 
 	/**
+	 * Only looks at the photos known to this instance; hasPhoto() also loads unknown photos from the datastore.
+	 *
 	 * @methodtype boolean-query
 	 * @methodproperty primitive
 	 */
 	protected boolean doHasPhoto(PhotoId id) {
-		return photoCache.containsKey(id);
+		return photoCache.contains(id) || photoIds.contains(id);
 	}
 
 	/**
 	 * @methodtype command
 	 *
-	 * Loads all scaled Images of this Photo from Google Cloud Storage
+	 * Loads all scaled Images of this Photo from Google Cloud Storage. Which sizes exist is taken from the rendition
+	 * manifest of the photo; only photos without manifest have to ask the image storage.
 	 */
 	protected void loadScaledImages(Photo photo) {
 		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
 
+		// without manifest simply ask for all sizes; the ones not found are missing in the result
+		List<PhotoSize> photoSizes = new ArrayList<PhotoSize>();
 		for (PhotoSize photoSize : PhotoSize.values()) {
-			log.config(LogBuilder.createSystemMessage().
-					addAction("loading image").
-					addParameter("image size", photoSize.asString()).
-					addParameter("photo ID", photoIdAsString).toString());
-			if (imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-				try {
-					Serializable rawImage = imageStorage.readImage(photoIdAsString, photoSize.asInt());
-					if (rawImage != null && rawImage instanceof Image) {
-						photo.setImage(photoSize, (Image) rawImage);
-					}
-				} catch (IOException e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addParameter("size", photoSize.asString()).
-							addParameter("photo ID", photoIdAsString).
-							addException("Could not load image although it exists", e).toString());
+			if (!photo.hasImageManifest() || photo.hasStoredImage(photoSize)) {
+				photoSizes.add(photoSize);
+			}
+		}
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("loading images").
+				addParameter("image sizes", photoSizes).
+				addParameter("photo ID", photoIdAsString).log();
+
+		try {
+			Map<PhotoSize, Serializable> rawImages = ImageStorage.getInstance().readImages(photoIdAsString, photoSizes);
+			for (Map.Entry<PhotoSize, Serializable> entry : rawImages.entrySet()) {
+				if (entry.getValue() instanceof Image) {
+					photo.setLoadedImage(entry.getKey(), (Image) entry.getValue());
 				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Size does not exist", photoSize.asString()).toString());
 			}
+		} catch (IOException e) {
+			StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+					addParameter("photo ID", photoIdAsString).
+					addException("Could not load images", e).log();
 		}
 	}
 
@@ -231,75 +381,166 @@ public class PhotoManager extends ObjectManager {
 		updateObject(photo);
 	}
 
+	/**
+	 * Saves the photo right away, even within a unit of work, e.g. before its original image is deleted.
+	 */
+	public void savePhotoNow(Photo photo) {
+		saveChangedImages(photo);
+		writeObjectNow(photo);
+	}
+
+	@Override
+	protected void updateObject(Persistent obj) {
+		if (obj instanceof Photo) {
+			saveChangedImages((Photo) obj);
+		}
+		super.updateObject(obj);
+	}
+
+	/**
+	 * Stores the images first, so that the photo is saved with an up-to-date rendition manifest.
+	 *
+	 * @methodtype command
+	 */
+	protected void saveChangedImages(Photo photo) {
+		if (photo.hasChanged(Photo.IMAGE_FIELDS)) {
+			saveScaledImages(photo);
+		}
+	}
+
+	/**
+	 * Only updates what depends on the fields that changed; e.g., a vote changes no more than the counters, and
+	 * needs nothing but the photo itself to be saved.
+	 */
 	@Override
 	protected void updateDependents(Persistent obj) {
 		if (obj instanceof Photo) {
 			Photo photo = (Photo) obj;
-			saveScaledImages(photo);
-			updateTags(photo);
-			UserManager userManager = UserManager.getInstance();
-			Client owner = userManager.getClientById(photo.getOwnerId());
-			userManager.saveClient(owner);
+			doRegisterPhoto(photo);
+			if (photo.hasChanged(Photo.TAG_FIELDS | Photo.OWNER_FIELDS)) {
+				updateTags(photo);
+			}
+			if (photo.hasChanged(Photo.OWNER_FIELDS)) {
+				UserManager userManager = UserManager.getInstance();
+				Client owner = userManager.getClientById(photo.getOwnerId());
+				userManager.saveClient(owner);
+			}
 		}
 	}
 
 	/**
-	 * @methodtype helper
+	 * Returns the ids (as in PhotoId.asInt()) of all photos that match every one of the conditions; served from the
+	 * in-memory tag index.
+	 *
+	 * @methodtype get
 	 */
-	public List<Tag> addTagsThatMatchCondition(List<Tag> tags, String condition) {
-		readObjects(tags, Tag.class, Tag.TEXT, condition);
-		return tags;
+	public BitSet getPhotoIdsMatchingAll(List<String> conditions) {
+		return tagIndex.getPhotoIdsMatchingAll(conditions);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public TagIndex getTagIndex() {
+		return tagIndex;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void indexTags(Photo photo) {
+		Set<String> tags = new HashSet<String>();
+		photoTagCollector.collect(tags, photo);
+		photo.setStoredTags(tags);
+		if (tagIndex.setTags(photo.getId(), tags)) {
+			photoSetVersion.incrementAndGet();
+		}
 	}
 
 	/**
 	 * @methodtype command
 	 *
-	 * Persists all available sizes of the Photo. If one size exceeds the limit of the persistence layer, e.g. > 1MB for
-	 * the Datastore, it is simply not persisted.
+	 * Persists all available sizes of the Photo. If one size can not be stored by the persistence layer, it and all
+	 * larger sizes are not persisted. Only images held by the photo are considered, so lazily loaded
+	 * images are not fetched just to be saved again. Images already recorded in the rendition manifest are skipped
+	 * without asking the image storage.
 	 */
 	protected void saveScaledImages(Photo photo) {
 		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
-		PhotoSize photoSize;
-		int it = 0;
-		boolean moreSizesExist = true;
-		do{
-			photoSize = PhotoSize.values()[it];
-			it++;
-			Image image = photo.getImage(photoSize);
-			if (image != null) {
-				try {
-					if (!imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-						imageStorage.writeImage(image, photoIdAsString, photoSize.asInt());
-					}
-				} catch (Exception e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addException("Problem when storing image", e).toString());
-					moreSizesExist = false;
-				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("No image for size", photoSize.asString()).toString());
-				moreSizesExist = false;
+
+		// collect all new images up to the first missing size, then write them in one go
+		Map<PhotoSize, Image> newImages = new EnumMap<PhotoSize, Image>(PhotoSize.class);
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			Image image = photo.getLoadedImage(photoSize);
+			if (image == null) {
+				StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+						addParameter("No image for size", photoSize.asString()).log();
+				break;
+			}
+			if (!photo.hasStoredImage(photoSize)) {
+				newImages.put(photoSize, image);
+			}
+		}
+
+		if (newImages.isEmpty()) {
+			return;
+		}
+
+		try {
+			Set<PhotoSize> writtenSizes = ImageStorage.getInstance().writeImages(photoIdAsString, newImages);
+			for (PhotoSize photoSize : writtenSizes) {
+				photo.addStoredImage(photoSize);
 			}
-		} while (it < PhotoSize.values().length && moreSizesExist);
+		} catch (Exception e) {
+			StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+					addException("Problem when storing images", e).log();
+		}
 	}
 
 	/**
-	 * Removes all tags of the Photo (obj) in the datastore that have been removed by the user and adds all new tags of
-	 * the photo to the datastore.
+	 * Brings the tags of the photo in the datastore up to date, by comparing its current tags with the ones it was
+	 * loaded with or last saved with; only tags that have been removed or added are deleted or written. The stored
+	 * tags and the tag index are changed only once the datastore is, so if writing fails, the next save tries again.
 	 */
 	protected void updateTags(Photo photo) {
-		// delete all existing tags, for the case that some have been removed
-		deleteObjects(Tag.class, Tag.PHOTO_ID, photo.getId().asString());
+		PhotoId photoId = photo.getId();
+		Set<String> oldTags = photo.getStoredTags();
+		Set<String> newTags = new HashSet<String>();
+		photoTagCollector.collect(newTags, photo);
+		if (oldTags.equals(newTags)) {
+			return;
+		}
 
-		// add all current tags to the datastore
-		Set<String> tags = new HashSet<String>();
-		photoTagCollector.collect(tags, photo);
-		for (Iterator<String> i = tags.iterator(); i.hasNext(); ) {
-			Tag tag = new Tag(i.next(), photo.getId().asString());
-			log.config(LogBuilder.createSystemMessage().addParameter("Writing Tag", tag.asString()).toString());
-			writeObject(tag);
+		Set<String> removedTags = new HashSet<String>(oldTags);
+		removedTags.removeAll(newTags);
+		if (!removedTags.isEmpty()) {
+			List<Tag> storedTags = new ArrayList<Tag>();
+			readObjects(storedTags, Tag.class, Tag.PHOTO_ID, photoId.asString());
+			List<Tag> staleTags = new ArrayList<Tag>();
+			for (Tag tag : storedTags) {
+				if (removedTags.contains(tag.getText())) {
+					staleTags.add(tag);
+				}
+			}
+			deleteObjects(staleTags);
+		}
+
+		List<Tag> addedTags = new ArrayList<Tag>();
+		for (String text : newTags) {
+			if (!oldTags.contains(text)) {
+				addedTags.add(new Tag(text, photoId.asString()));
+			}
+		}
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("Writing Tags").
+				addParameter(Tag.PHOTO_ID, photoId.asString()).
+				addParameter("added", addedTags.size()).
+				addParameter("removed", removedTags.size()).log();
+		writeObjectsNow(addedTags);
+
+		photo.setStoredTags(newTags);
+		if (tagIndex.setTags(photoId, newTags)) {
+			photoSetVersion.incrementAndGet();
 		}
 	}
 
@@ -307,16 +548,77 @@ public class PhotoManager extends ObjectManager {
 	 *
 	 */
 	public void savePhotos() throws IOException{
-		updateObjects(photoCache.values());
+		updateObjects(photoCache.getPhotos());
 	}
 
 	/**
+	 * Returns a snapshot of the currently cached photos; use getPhotoIds() for all photos.
+	 *
 	 * @methodtype get
 	 */
 	public Map<PhotoId, Photo> getPhotoCache() {
+		return photoCache.asMap();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public PhotoCache getCache() {
 		return photoCache;
 	}
 
+	/**
+	 * Returns the ids of all photos, including those that are currently not cached.
+	 *
+	 * @methodtype get
+	 */
+	public Set<PhotoId> getPhotoIds() {
+		return Collections.unmodifiableSet(photoIds);
+	}
+
+	/**
+	 * Returns the photos with praise their owners were not notified about yet. Cached photos are checked in memory;
+	 * of the others only those whose PraiseTotal has new praise are loaded.
+	 *
+	 * @methodtype get
+	 */
+	public Collection<Photo> getPhotosWithNewPraise() {
+		Map<PhotoId, Photo> result = new LinkedHashMap<PhotoId, Photo>();
+		for (Photo photo : photoCache.getPhotos()) {
+			if (photo.hasNewPraise()) {
+				result.put(photo.getId(), photo);
+			}
+		}
+
+		for (PhotoId id : PraiseCounterManager.getInstance().getPhotoIdsWithNewPraise()) {
+			if (!result.containsKey(id)) {
+				Photo photo = getPhotoFromId(id);
+				if ((photo != null) && photo.hasNewPraise()) {
+					result.put(id, photo);
+				}
+			}
+		}
+
+		return result.values();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getPhotoSetVersion() {
+		return photoSetVersion.get();
+	}
+
+	/**
+	 * Answers visibility without loading the photo if it is not cached.
+	 *
+	 * @methodtype boolean-query
+	 */
+	public boolean isVisiblePhoto(PhotoId id) {
+		Photo photo = photoCache.contains(id) ? doGetPhotoFromId(id) : null;
+		return (photo != null) ? photo.isVisible() : visiblePhotoIds.contains(id);
+	}
+
 	/**
 	 *
 	 */
@@ -340,15 +642,74 @@ public class PhotoManager extends ObjectManager {
 	}
 
 	/**
-	 *
+	 * Creates a photo from the uploaded image. With asynchronous renditions, only the original is stored and the
+	 * photo has pending renditions, which are to be created by createRenditions().
 	 */
 	public Photo createPhoto(String filename, Image uploadedImage) throws Exception {
 		PhotoId id = PhotoId.getNextId();
-		Photo result = PhotoUtil.createPhoto(filename, id, uploadedImage);
+		Photo result;
+		if (SysConfig.isAsyncRenditions()) {
+			result = PhotoUtil.createPendingPhoto(filename, id, uploadedImage);
+			ImageStorage.getInstance().writeOriginalImage(uploadedImage, id.asString());
+		} else {
+			result = PhotoUtil.createPhoto(filename, id, uploadedImage);
+		}
 		addPhoto(result);
 		return result;
 	}
 
+	/**
+	 * Creates the pending images of the photo from its original. The thumbnail is created and saved first, so the
+	 * photo can be listed as soon as possible; the larger sizes follow. Once all images are saved, the original is
+	 * deleted. Runs synchronized on the photo, so that it is not run twice for the same photo at a time; the photo is
+	 * saved right away, so it is stored before its original is gone.
+	 *
+	 * @methodtype command
+	 */
+	public void createRenditions(Photo photo) throws Exception {
+		synchronized (photo) {
+			doCreateRenditions(photo);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void doCreateRenditions(Photo photo) throws Exception {
+		if (!photo.hasPendingRenditions()) {
+			return;
+		}
+
+		String photoIdAsString = photo.getId().asString();
+		Serializable original = ImageStorage.getInstance().readOriginalImage(photoIdAsString);
+		if (!(original instanceof Image)) {
+			throw new IllegalStateException("original image of photo " + photoIdAsString + " is missing");
+		}
+		Image originalImage = (Image) original;
+
+		List<PhotoSize> sizes = PhotoUtil.getPhotoSizes(photo.getWidth(), photo.getHeight());
+		List<PhotoSize> thumbSizes = sizes.subList(0, Math.min(1, sizes.size()));
+		PhotoUtil.createImageFiles(originalImage, photo, thumbSizes);
+		savePhotoNow(photo);
+
+		PhotoUtil.createImageFiles(originalImage, photo, sizes.subList(thumbSizes.size(), sizes.size()));
+		photo.setRenditionsPending(false);
+		savePhotoNow(photo);
+
+		try {
+			ImageStorage.getInstance().deleteOriginalImage(photoIdAsString);
+		} catch (IOException e) {
+			StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+					addParameter("photo id", photoIdAsString).
+					addException("Could not delete original image", e).log();
+		}
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("created renditions").
+				addParameter("photo id", photoIdAsString).
+				addParameter("sizes", sizes).log();
+	}
+
 	/**
 	 * @methodtype command
 	 */
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A PhotoRanking keeps the best photos by praise, up to a fixed capacity. Entries are ordered by praise, then by
+ * number of votes, then by id, in a skip list, so reading the top k is O(k) and needs no lock; updates are
+ * O(log capacity). A photo that falls off the end is dropped and re-enters with its next update.
+ */
+public class PhotoRanking {
+
+	/**
+	 * An immutable snapshot of a photo's praise
+	 */
+	public static class Entry implements Comparable<Entry> {
+
+		protected final PhotoId photoId;
+		protected final double praise;
+		protected final long noVotes;
+
+		/**
+		 *
+		 */
+		public Entry(PhotoId photoId, double praise, long noVotes) {
+			this.photoId = photoId;
+			this.praise = praise;
+			this.noVotes = noVotes;
+		}
+
+		/**
+		 *
+		 */
+		public Entry(Photo photo) {
+			this(photo.getId(), photo.getPraise(), photo.getNoVotes());
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public PhotoId getPhotoId() {
+			return photoId;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public double getPraise() {
+			return praise;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public long getNoVotes() {
+			return noVotes;
+		}
+
+		/**
+		 * @methodtype comparison
+		 *
+		 * Better entries come first.
+		 */
+		public int compareTo(Entry other) {
+			int result = Double.compare(other.praise, praise);
+			if (result == 0) {
+				result = compare(other.noVotes, noVotes);
+			}
+			if (result == 0) {
+				result = compare(photoId.asInt(), other.photoId.asInt());
+			}
+			return result;
+		}
+
+		/**
+		 * @methodtype helper
+		 */
+		protected static int compare(long a, long b) {
+			return (a < b) ? -1 : ((a == b) ? 0 : 1);
+		}
+
+		/**
+		 *
+		 */
+		public boolean equals(Object o) {
+			return (o instanceof Entry) && (compareTo((Entry) o) == 0);
+		}
+
+		/**
+		 *
+		 */
+		public int hashCode() {
+			return photoId.hashCode();
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected final int capacity;
+
+	/**
+	 *
+	 */
+	protected final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<Entry>();
+
+	/**
+	 * Current entry of each ranked photo; guarded by this
+	 */
+	protected final Map<PhotoId, Entry> entriesByPhotoId = new HashMap<PhotoId, Entry>();
+
+	/**
+	 *
+	 */
+	public PhotoRanking(int myCapacity) {
+		capacity = myCapacity;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int size() {
+		return entriesByPhotoId.size();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Replaces the photo's entry; the entry is only kept if it ranks within the capacity.
+	 */
+	public synchronized void update(Entry entry) {
+		Entry old = entriesByPhotoId.remove(entry.getPhotoId());
+		if (old != null) {
+			entries.remove(old);
+		}
+
+		if (entriesByPhotoId.size() >= capacity) {
+			Entry last = entries.last();
+			if (entry.compareTo(last) >= 0) {
+				return;
+			}
+			entries.remove(last);
+			entriesByPhotoId.remove(last.getPhotoId());
+		}
+
+		entries.add(entry);
+		entriesByPhotoId.put(entry.getPhotoId(), entry);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void remove(PhotoId photoId) {
+		Entry old = entriesByPhotoId.remove(photoId);
+		if (old != null) {
+			entries.remove(old);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public List<Entry> getTop(int k) {
+		List<Entry> result = new ArrayList<Entry>(Math.min(k, capacity));
+		for (Iterator<Entry> i = entries.iterator(); i.hasNext() && (result.size() < k); ) {
+			result.add(i.next());
+		}
+		return result;
+	}
+
+}
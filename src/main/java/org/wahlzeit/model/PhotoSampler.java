@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A pool of candidate photo ids from which photos are picked uniformly at random in constant time.
+ *
+ * The ids are kept in an int array (PhotoId.asInt()) that is split into two regions: [0, active) holds the regular
+ * candidates, [active, size) those the user skipped; they are only picked once no regular candidate is left. Ids that
+ * have been processed in the meantime are dropped lazily by swap-remove when they are picked.
+ */
+public class PhotoSampler implements Serializable {
+
+	/**
+	 *
+	 */
+	protected static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 *
+	 */
+	protected int[] ids = new int[INITIAL_CAPACITY];
+	protected int active = 0;
+	protected int size = 0;
+
+	/**
+	 *
+	 */
+	public PhotoSampler() {
+		// do nothing
+	}
+
+	/**
+	 * Replaces the pool with the given candidates; processed ones are left out, skipped ones go to the back.
+	 *
+	 * @methodtype command
+	 */
+	public void rebuild(Iterable<PhotoId> candidates, PhotoIdSet processed, PhotoIdSet skipped) {
+		clear();
+		List<PhotoId> skippedCandidates = new ArrayList<PhotoId>();
+		for (PhotoId candidate : candidates) {
+			if (processed.contains(candidate)) {
+				continue;
+			}
+			if (skipped.contains(candidate)) {
+				skippedCandidates.add(candidate);
+			} else {
+				add(candidate);
+			}
+		}
+
+		for (PhotoId candidate : skippedCandidates) {
+			doAppend(candidate.asInt());
+		}
+	}
+
+	/**
+	 * Adds a regular candidate.
+	 *
+	 * @methodtype command
+	 */
+	public void add(PhotoId id) {
+		doAppend(id.asInt());
+		swap(active, size - 1);
+		active++;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected void doAppend(int id) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, 2 * ids.length);
+		}
+		ids[size++] = id;
+	}
+
+	/**
+	 * Picks a random regular candidate, or a random skipped one if no regular candidate is left.
+	 *
+	 * @return the id or PhotoId.NULL_ID if the pool is exhausted
+	 */
+	public PhotoId pick(Random random, PhotoIdSet processed, PhotoIdSet skipped) {
+		while (active > 0) {
+			int index = random.nextInt(active);
+			int id = ids[index];
+			if (processed.contains(id)) {
+				removeActive(index);
+			} else if (skipped.contains(id)) {
+				// move it into the skipped region
+				swap(index, active - 1);
+				active--;
+			} else {
+				return PhotoId.getIdFromInt(id);
+			}
+		}
+
+		while (size > active) {
+			int index = active + random.nextInt(size - active);
+			int id = ids[index];
+			if (processed.contains(id)) {
+				swap(index, size - 1);
+				size--;
+			} else {
+				return PhotoId.getIdFromInt(id);
+			}
+		}
+
+		return PhotoId.NULL_ID;
+	}
+
+	/**
+	 * Removes the id at the given index of the active region, keeping both regions contiguous.
+	 *
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected void removeActive(int index) {
+		swap(index, active - 1);
+		swap(active - 1, size - 1);
+		active--;
+		size--;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void swap(int i, int j) {
+		int temp = ids[i];
+		ids[i] = ids[j];
+		ids[j] = temp;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		active = 0;
+		size = 0;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public List<PhotoId> asList() {
+		List<PhotoId> result = new ArrayList<PhotoId>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(PhotoId.getIdFromInt(ids[i]));
+		}
+		return result;
+	}
+
+}
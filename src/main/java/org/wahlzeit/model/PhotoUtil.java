@@ -21,11 +21,10 @@
 package org.wahlzeit.model;
 
 import com.google.appengine.api.images.Image;
-import com.google.appengine.api.images.ImagesService;
-import com.google.appengine.api.images.ImagesServiceFactory;
-import com.google.appengine.api.images.Transform;
-import org.wahlzeit.services.LogBuilder;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -53,20 +52,64 @@ public class PhotoUtil {
 	}
 
 	/**
+	 * Creates a photo whose images are created later on from the original, see createImageFiles().
 	 *
+	 * @methodtype creation
+	 */
+	public static Photo createPendingPhoto(String filename, PhotoId id, Image uploadedImage) {
+		assertIsValidImage(uploadedImage);
+		int sourceWidth = uploadedImage.getWidth();
+		int sourceHeight = uploadedImage.getHeight();
+		assertHasValidSize(sourceWidth, sourceHeight);
+
+		Photo result = FishPhotoFactory.getInstance().createPhoto(id);
+		result.setEnding(filename.substring(filename.lastIndexOf(".") + 1));
+		result.setWidthAndHeight(sourceWidth, sourceHeight);
+		result.setRenditionsPending(true);
+
+		return result;
+	}
+
+	/**
+	 * Creates the images of all sizes the source is large enough for, using the configured image scaler.
 	 */
 	public static void createImageFiles(Image source, Photo photo) throws Exception {
 		assertIsValidImage(source);
+		createImageFiles(source, photo, getPhotoSizes(source.getWidth(), source.getHeight()));
+	}
+
+	/**
+	 * Creates the images of the given sizes only.
+	 */
+	public static void createImageFiles(Image source, Photo photo, List<PhotoSize> sizes) throws Exception {
+		assertIsValidImage(source);
+		if (sizes.isEmpty()) {
+			return;
+		}
 
 		int sourceWidth = source.getWidth();
 		int sourceHeight = source.getHeight();
 		assertHasValidSize(sourceWidth, sourceHeight);
 
+		Map<PhotoSize, Image> images = ImageScaler.getInstance().scaleImage(source, sourceWidth, sourceHeight, sizes);
+		for (Map.Entry<PhotoSize, Image> entry : images.entrySet()) {
+			photo.setImage(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns all sizes an image of the given dimensions is large enough for, from small to large.
+	 *
+	 * @methodtype get
+	 */
+	public static List<PhotoSize> getPhotoSizes(int sourceWidth, int sourceHeight) {
+		List<PhotoSize> result = new ArrayList<PhotoSize>();
 		for (PhotoSize size : PhotoSize.values()) {
 			if (!size.isWiderAndHigher(sourceWidth, sourceHeight)) {
-				scaleImage(ImagesServiceFactory.makeImage(source.getImageData()), size, photo);
+				result.add(size);
 			}
 		}
+		return result;
 	}
 
 	/**
@@ -87,24 +130,4 @@ public class PhotoUtil {
 		}
 	}
 
-	/**
-	 * @methodtype command Scale the source picture to the given size, store it in the datastore and reference it in the
-	 * photo.
-	 */
-	protected static void scaleImage(Image source, PhotoSize size, Photo photo) throws Exception {
-		int sourceWidth = source.getWidth();
-		int sourceHeight = source.getHeight();
-
-		int targetWidth = size.calcAdjustedWidth(sourceWidth, sourceHeight);
-		int targetHeight = size.calcAdjustedHeight(sourceWidth, sourceHeight);
-
-		ImagesService imagesService = ImagesServiceFactory.getImagesService();
-		Transform resize = ImagesServiceFactory.makeResize(targetWidth, targetHeight);
-		Image newImage = imagesService.applyTransform(resize, source);
-
-		photo.setImage(size, newImage);
-
-		log.config(LogBuilder.createSystemMessage().addParameter("Scaled image to size", size.asString()).toString());
-	}
-
 }
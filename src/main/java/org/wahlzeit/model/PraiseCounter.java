@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A PraiseCounter accumulates praise in memory. Each thread adds to one of several stripes, so concurrent
+ * votes for the same photo do not contend on a single value; the totals are summed over all stripes on read.
+ * Stripes are spaced a cache line apart to keep them from sharing one.
+ */
+public class PraiseCounter implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of stripes, a power of two
+	 */
+	protected static final int NO_STRIPES = 8;
+
+	/**
+	 * Distance between two stripes in longs; the first long of a stripe is the sum, the second the votes
+	 */
+	protected static final int STRIDE = 8;
+
+	/**
+	 *
+	 */
+	protected final AtomicLongArray cells = new AtomicLongArray(NO_STRIPES * STRIDE);
+
+	/**
+	 * @methodtype command
+	 */
+	public void add(int value) {
+		add(value, 1);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void add(long sum, long noVotes) {
+		int index = getStripeIndex();
+		cells.addAndGet(index, sum);
+		cells.addAndGet(index + 1, noVotes);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getSum() {
+		return sumOf(0);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoVotes() {
+		return sumOf(1);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected long sumOf(int offset) {
+		long result = 0;
+		for (int i = offset; i < cells.length(); i += STRIDE) {
+			result += cells.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected int getStripeIndex() {
+		int hash = (int) Thread.currentThread().getId();
+		hash ^= hash >>> 16;
+		return (hash & (NO_STRIPES - 1)) * STRIDE;
+	}
+
+}
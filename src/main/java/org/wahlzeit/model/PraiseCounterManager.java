@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.VoidWork;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
+import org.wahlzeit.services.StructuredLogBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The PraiseCounterManager records votes in sharded counters and periodically aggregates them into PraiseTotals.
+ * A vote is added to a random PraiseShard of its photo, so concurrent votes rarely write the same entity, and to
+ * the photo's in-memory PraiseCounter, so that getPraise() reflects it right away. Each instance reads the shards
+ * of the photos it shows from time to time, so that it also shows the votes counted by other instances.
+ */
+public class PraiseCounterManager extends ObjectManager {
+
+	private static final Logger log = Logger.getLogger(PraiseCounterManager.class.getName());
+
+	/**
+	 * Number of shards per photo
+	 */
+	public static final int NO_SHARDS = 16;
+
+	/**
+	 * Minimum time in milliseconds between two reads of the shards of a photo
+	 */
+	public static final long PRAISE_REFRESH_INTERVAL = 60 * 1000;
+
+	/**
+	 *
+	 */
+	protected static final PraiseCounterManager instance = new PraiseCounterManager();
+
+	/**
+	 * @methodtype get
+	 */
+	public static final PraiseCounterManager getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	protected PraiseCounterManager() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Adds a vote to one shard of the photo first, so that any vote counted in memory is already stored.
+	 */
+	public void addPraise(Photo photo, final int value) {
+		assertIsNonNullArgument(photo, "photo");
+
+		final PhotoId photoId = photo.getId();
+		final int shardNo = ThreadLocalRandom.current().nextInt(NO_SHARDS);
+		OfyService.ofy().transact(new VoidWork() {
+			public void vrun() {
+				String shardId = PraiseShard.getShardId(photoId, shardNo);
+				PraiseShard shard = OfyService.ofy().load().type(PraiseShard.class).id(shardId).now();
+				if (shard == null) {
+					shard = new PraiseShard(photoId, shardNo);
+				}
+				shard.addToPraise(value);
+				OfyService.ofy().save().entity(shard).now();
+			}
+		});
+
+		photo.addToPraise(value);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Reads the shards of the photo, unless that has been done within the last PRAISE_REFRESH_INTERVAL. A failed
+	 * read leaves the praise as it is.
+	 */
+	public void refreshPraise(Photo photo) {
+		assertIsNonNullArgument(photo, "photo");
+
+		long now = System.currentTimeMillis();
+		if (now - photo.getPraiseRefreshTime() < PRAISE_REFRESH_INTERVAL) {
+			return;
+		}
+		photo.setPraiseRefreshTime(now);
+
+		try {
+			Collection<Photo> photos = Collections.singletonList(photo);
+			Map<String, long[]> includedPending = getPendingPraise(photos);
+			Set<String> photoIds = Collections.singleton(photo.getIdAsString());
+			setShardedPraise(photos, sumShards(readShards(photoIds).values()), includedPending);
+		} catch (RuntimeException ex) {
+			StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+					addParameter("photo id", photo.getIdAsString()).
+					addException("Could not read praise shards", ex).log();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sets the praise of freshly loaded photos from their PraiseTotals, with one batch get.
+	 */
+	public void loadPraiseTotals(Collection<? extends Photo> photos) {
+		if (photos.isEmpty()) {
+			return;
+		}
+
+		List<String> photoIds = new ArrayList<String>(photos.size());
+		for (Photo photo : photos) {
+			photoIds.add(photo.getIdAsString());
+		}
+
+		Map<String, PraiseTotal> totals = OfyService.ofy().load().type(PraiseTotal.class).ids(photoIds);
+		for (Photo photo : photos) {
+			PraiseTotal total = totals.get(photo.getIdAsString());
+			if (total != null) {
+				photo.setShardedPraise(total.getPraiseSum(), total.getNoVotes(), 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sums up the shards of all photos with pending shards into their PraiseTotals. A shard stays pending if it
+	 * received another vote meanwhile. Photos held by this instance take over the new totals right away.
+	 */
+	public void aggregatePraise() {
+		Set<String> photoIds = new HashSet<String>();
+		List<PraiseShard> pendingShards = OfyService.ofy().load().type(PraiseShard.class).
+				filter(PraiseShard.PENDING, true).list();
+		for (PraiseShard shard : pendingShards) {
+			photoIds.add(shard.getPhotoId());
+		}
+
+		List<Photo> cachedPhotos = new ArrayList<Photo>();
+		PhotoManager photoManager = PhotoManager.getInstance();
+		for (String photoId : photoIds) {
+			Photo photo = photoManager.doGetPhotoFromId(PhotoId.getIdFromString(photoId));
+			if (photo != null) {
+				cachedPhotos.add(photo);
+			}
+		}
+		Map<String, long[]> includedPending = getPendingPraise(cachedPhotos);
+
+		Map<String, PraiseShard> shards = readShards(photoIds);
+		Map<String, long[]> totals = sumShards(shards.values());
+		List<PraiseTotal> praiseTotals = new ArrayList<PraiseTotal>(totals.size());
+		for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+			praiseTotals.add(new PraiseTotal(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+		}
+		writeObjectsNow(praiseTotals);
+
+		for (PraiseShard shard : shards.values()) {
+			if (shard.isPending()) {
+				clearPending(shard);
+			}
+		}
+
+		setShardedPraise(cachedPhotos, totals, includedPending);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).addAction("aggregate praise").
+				addParameter("pending shards", pendingShards.size()).
+				addParameter("updated photos", praiseTotals.size()).log();
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the ids of the photos whose PraiseTotal has new praise their owners were not notified about yet.
+	 */
+	public Set<PhotoId> getPhotoIdsWithNewPraise() {
+		Set<PhotoId> result = new HashSet<PhotoId>();
+		List<PraiseTotal> totals = OfyService.ofy().load().type(PraiseTotal.class).
+				filter(PraiseTotal.NEW_PRAISE, true).list();
+		for (PraiseTotal total : totals) {
+			result.add(PhotoId.getIdFromString(total.getPhotoId()));
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Clears the new praise flag of the photo's PraiseTotal, unless it counts votes the owner was not notified about.
+	 */
+	public void clearNewPraise(Photo photo) {
+		assertIsNonNullArgument(photo, "photo");
+
+		final String photoId = photo.getIdAsString();
+		final long notifiedNoVotes = photo.getNoVotes();
+		OfyService.ofy().transact(new VoidWork() {
+			public void vrun() {
+				PraiseTotal total = OfyService.ofy().load().type(PraiseTotal.class).id(photoId).now();
+				if (total != null && total.hasNewPraise() && total.getNoVotes() <= notifiedNoVotes) {
+					total.setNoNewPraise();
+					OfyService.ofy().save().entity(total).now();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the pending praise of the photos as {sum, votes}. Taken before the shards are read, it is included in
+	 * what is read, as a vote is stored in its shard before it is counted in memory.
+	 */
+	protected Map<String, long[]> getPendingPraise(Collection<Photo> photos) {
+		Map<String, long[]> result = new HashMap<String, long[]>();
+		for (Photo photo : photos) {
+			// a vote adds its value before it counts, so the sum read after the votes includes all their values
+			long noVotes = photo.getPendingNoVotes();
+			long sum = photo.getPendingPraiseSum();
+			result.put(photo.getIdAsString(), new long[] {sum, noVotes});
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Reads all shards of the given photos with one batch get.
+	 */
+	protected Map<String, PraiseShard> readShards(Collection<String> photoIds) {
+		List<String> shardIds = new ArrayList<String>(photoIds.size() * NO_SHARDS);
+		for (String photoId : photoIds) {
+			for (int shardNo = 0; shardNo < NO_SHARDS; shardNo++) {
+				shardIds.add(PraiseShard.getShardId(PhotoId.getIdFromString(photoId), shardNo));
+			}
+		}
+		return OfyService.ofy().load().type(PraiseShard.class).ids(shardIds);
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Returns the totals of the shards per photo id as {sum, votes}.
+	 */
+	protected static Map<String, long[]> sumShards(Collection<PraiseShard> shards) {
+		Map<String, long[]> result = new HashMap<String, long[]>();
+		for (PraiseShard shard : shards) {
+			long[] total = result.get(shard.getPhotoId());
+			if (total == null) {
+				total = new long[2];
+				result.put(shard.getPhotoId(), total);
+			}
+			total[0] += shard.getPraiseSum();
+			total[1] += shard.getNoVotes();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected static void setShardedPraise(Collection<Photo> photos, Map<String, long[]> totals,
+										   Map<String, long[]> includedPending) {
+		for (Photo photo : photos) {
+			long[] total = totals.get(photo.getIdAsString());
+			long[] pending = includedPending.get(photo.getIdAsString());
+			if (total != null && pending != null) {
+				photo.setShardedPraise(total[0], total[1], pending[0], pending[1]);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Clears the pending flag of the shard, unless it has received a vote since it was read.
+	 */
+	protected void clearPending(final PraiseShard readShard) {
+		final String shardId = readShard.getId();
+		OfyService.ofy().transact(new VoidWork() {
+			public void vrun() {
+				PraiseShard shard = OfyService.ofy().load().type(PraiseShard.class).id(shardId).now();
+				if (shard != null && shard.getNoVotes() == readShard.getNoVotes()) {
+					shard.setNotPending();
+					OfyService.ofy().save().entity(shard).now();
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import org.wahlzeit.services.DataObject;
+
+/**
+ * A PraiseShard holds part of the praise a photo received. Votes are spread over several shards per photo,
+ * each its own entity group, so that they can be written concurrently; PraiseCounterManager folds them into
+ * the photo's PraiseTotal periodically. Shards are cumulative and never reset. A shard is pending from its
+ * last vote until it has been aggregated, so that only photos with new votes have to be aggregated.
+ */
+@Entity
+public class PraiseShard extends DataObject {
+
+	public static final String PHOTO_ID = "photoId";
+	public static final String PENDING = "pending";
+
+	@Id
+	private String id;
+	@Index
+	private String photoId;
+	private long praiseSum = 0;
+	private long noVotes = 0;
+	@Index
+	private boolean pending = false;
+
+	/**
+	 *
+	 */
+	public PraiseShard() {
+		// do nothing, necessary for Google Datastore
+	}
+
+	/**
+	 *
+	 */
+	public PraiseShard(PhotoId photoId, int shardNo) {
+		this.id = getShardId(photoId, shardNo);
+		this.photoId = photoId.asString();
+		incWriteCount();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public static String getShardId(PhotoId photoId, int shardNo) {
+		return photoId.asString() + "-" + shardNo;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getPhotoId() {
+		return photoId;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPraiseSum() {
+		return praiseSum;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoVotes() {
+		return noVotes;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addToPraise(int value) {
+		praiseSum += value;
+		noVotes += 1;
+		pending = true;
+		incWriteCount();
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setNotPending() {
+		pending = false;
+		incWriteCount();
+	}
+
+}
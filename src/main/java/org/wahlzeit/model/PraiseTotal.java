@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import org.wahlzeit.services.DataObject;
+
+/**
+ * A PraiseTotal holds the praise of all PraiseShards of a photo, as of the last aggregation. It is written by
+ * PraiseCounterManager.aggregatePraise(), and kept apart from the photo, so that saving a photo can not
+ * overwrite it with an older total. Each aggregation flags new praise, which PraiseCounterManager.clearNewPraise()
+ * clears once the owner was notified.
+ */
+@Entity
+public class PraiseTotal extends DataObject {
+
+	public static final String NEW_PRAISE = "newPraise";
+
+	@Id
+	private String id;
+	private long praiseSum = 0;
+	private long noVotes = 0;
+	@Index
+	private boolean newPraise = true;
+
+	/**
+	 *
+	 */
+	public PraiseTotal() {
+		// do nothing, necessary for Google Datastore
+	}
+
+	/**
+	 *
+	 */
+	public PraiseTotal(String photoIdAsString, long praiseSum, long noVotes) {
+		this.id = photoIdAsString;
+		this.praiseSum = praiseSum;
+		this.noVotes = noVotes;
+		incWriteCount();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getPhotoId() {
+		return id;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPraiseSum() {
+		return praiseSum;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoVotes() {
+		return noVotes;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasNewPraise() {
+		return newPraise;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setNoNewPraise() {
+		newPraise = false;
+		incWriteCount();
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index from tags (as produced by a PhotoTagCollector, e.g. "un:name" or "tg:tag") to the
+ * photos carrying them. Each posting list is a bitmap keyed by PhotoId.asInt(); as photo ids are handed out
+ * densely, these bitmaps stay compact.
+ */
+public class TagIndex {
+
+	/**
+	 * tag -> photo ids
+	 */
+	protected final Map<String, BitSet> postings = new HashMap<String, BitSet>();
+
+	/**
+	 * photo id -> tags, needed to remove stale postings
+	 */
+	protected final Map<Integer, Set<String>> photoTags = new HashMap<Integer, Set<String>>();
+
+	/**
+	 *
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Replaces the tags of the given photo with the given ones.
+	 *
+	 * @methodtype set
+	 * @return true if the tags of the photo changed
+	 */
+	public boolean setTags(PhotoId photoId, Set<String> tags) {
+		int id = photoId.asInt();
+		Set<String> newTags = new HashSet<String>(tags);
+
+		lock.writeLock().lock();
+		try {
+			Set<String> oldTags = photoTags.get(id);
+			if ((oldTags == null) ? newTags.isEmpty() : oldTags.equals(newTags)) {
+				return false;
+			}
+
+			if (oldTags != null) {
+				for (String tag : oldTags) {
+					if (!newTags.contains(tag)) {
+						doRemovePosting(tag, id);
+					}
+				}
+			}
+
+			for (String tag : newTags) {
+				BitSet posting = postings.get(tag);
+				if (posting == null) {
+					posting = new BitSet();
+					postings.put(tag, posting);
+				}
+				posting.set(id);
+			}
+
+			if (newTags.isEmpty()) {
+				photoTags.remove(id);
+			} else {
+				photoTags.put(id, newTags);
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public boolean removePhoto(PhotoId photoId) {
+		return setTags(photoId, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected void doRemovePosting(String tag, int id) {
+		BitSet posting = postings.get(tag);
+		if (posting != null) {
+			posting.clear(id);
+			if (posting.isEmpty()) {
+				postings.remove(tag);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Set<String> getTags(PhotoId photoId) {
+		lock.readLock().lock();
+		try {
+			Set<String> result = photoTags.get(photoId.asInt());
+			return (result == null) ? Collections.<String>emptySet() : new HashSet<String>(result);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a copy of the posting list of the tag.
+	 *
+	 * @methodtype get
+	 */
+	public BitSet getPhotoIds(String tag) {
+		lock.readLock().lock();
+		try {
+			BitSet posting = postings.get(tag);
+			return (posting == null) ? new BitSet() : (BitSet) posting.clone();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the ids of all photos that carry every one of the tags, i.e. the intersection of their posting lists.
+	 *
+	 * @methodtype get
+	 */
+	public BitSet getPhotoIdsMatchingAll(Collection<String> tags) {
+		BitSet result = new BitSet();
+		if (tags.isEmpty()) {
+			return result;
+		}
+
+		lock.readLock().lock();
+		try {
+			boolean isFirst = true;
+			for (String tag : tags) {
+				BitSet posting = postings.get(tag);
+				if (posting == null) {
+					return new BitSet();
+				}
+				if (isFirst) {
+					result.or(posting);
+					isFirst = false;
+				} else {
+					result.and(posting);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoTags() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+}
@@ -283,9 +283,9 @@ public class User extends Client {
 				double sc1 = p1.getPraise();
 				double sc2 = p2.getPraise();
 				if (sc1 == sc2) {
-					String id1 = String.valueOf(p1.getId());
-					String id2 = String.valueOf(p2.getId());
-					return id1.compareTo(id2);
+					int id1 = p1.getId().asInt();
+					int id2 = p2.getId().asInt();
+					return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
 				} else if (sc1 < sc2) {
 					return 1;
 				} else {
@@ -22,20 +22,36 @@ package org.wahlzeit.model.persistence;
 
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.VoidWork;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
+import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.OfyService;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
  * Adapter for the Google Datastore. Use default constructor to create an instance.
+ *
+ * Images that exceed the entity size limit of the Datastore are split: the {@link ImageWrapper} holds the first
+ * chunk of the image data, the remaining data is stored in {@link ImageChunk}s.
  * 
  * @review
  */
@@ -43,22 +59,18 @@ public class DatastoreAdapter extends ImageStorage {
 
 	private static final Logger log = Logger.getLogger(DatastoreAdapter.class.getName());
 
+	/**
+	 * Maximum number of image bytes per entity; leaves room for the entity overhead below the 1 MB limit, see
+	 * https://cloud.google.com/datastore/docs/tools/administration
+	 */
+	public static final int CHUNK_SIZE = 1000 * 1000;
+
 
 	@Override
 	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
 			throws IOException, InvalidParameterException {
 		if (image instanceof Image) {
-			final ImageWrapper imageWrapper = new ImageWrapper(photoIdAsString + size);
-			imageWrapper.setImage((Image) image);
-
-			ObjectifyService.run(new Work<Boolean>() {
-				@Override
-				public Boolean run() {
-					OfyService.ofy().save().entity(imageWrapper).now();
-					return null;
-				}
-			});
-
+			saveImages(Collections.singletonMap(photoIdAsString + size, (Image) image));
 			log.config(LogBuilder.createSystemMessage().addMessage("image successfully written").toString());
 		} else {
 			log.warning(LogBuilder.createSystemMessage().
@@ -67,64 +79,300 @@ public class DatastoreAdapter extends ImageStorage {
 		}
 	}
 
+	/**
+	 * Stores all images together; see saveImages().
+	 */
 	@Override
-	protected Image doReadImage(final String photoIdAsString, final int size) throws IOException {
-		Image result = null;
+	protected Set<PhotoSize> doWriteImages(String photoIdAsString, Map<PhotoSize, Serializable> images) {
+		Set<PhotoSize> result = EnumSet.noneOf(PhotoSize.class);
+		Map<String, Image> imagesById = new LinkedHashMap<String, Image>();
+		for (Map.Entry<PhotoSize, Serializable> entry : images.entrySet()) {
+			if (!(entry.getValue() instanceof Image)) {
+				log.warning(LogBuilder.createSystemMessage().
+						addMessage("did not get an Image type to store").
+						addParameter("image type", entry.getValue().toString()).toString());
+				break;
+			}
 
-		ImageWrapper imageWrapper = ObjectifyService.run(new Work<ImageWrapper>() {
+			imagesById.put(photoIdAsString + entry.getKey().asInt(), (Image) entry.getValue());
+			result.add(entry.getKey());
+		}
+
+		if (!result.isEmpty()) {
+			saveImages(imagesById);
+			log.config(LogBuilder.createSystemMessage().
+					addParameter("images successfully written", result.size()).toString());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes images that fit into one entity, and did so before, with one batch save. Split images, or images that
+	 * replace a split one, are written in a transaction each; see saveChunkedImage(). Which images were split is
+	 * looked up in their small ImageChunkCounts, so no previous image data is loaded.
+	 *
+	 * @methodtype command
+	 */
+	protected void saveImages(final Map<String, Image> images) {
+		ObjectifyService.run(new Work<Void>() {
 			@Override
-			public ImageWrapper run() {
-				return OfyService.ofy().load().type(ImageWrapper.class).id(photoIdAsString + size).now();
+			public Void run() {
+				Map<String, ImageChunkCount> chunkCounts =
+						OfyService.ofy().load().type(ImageChunkCount.class).ids(images.keySet());
+
+				List<Object> unchunkedImages = new ArrayList<Object>();
+				for (Map.Entry<String, Image> entry : images.entrySet()) {
+					String id = entry.getKey();
+					List<Object> entities = new ArrayList<Object>();
+					addEntities(entities, id, entry.getValue());
+					if ((entities.size() == 1) && !chunkCounts.containsKey(id)) {
+						unchunkedImages.addAll(entities);
+					} else {
+						saveChunkedImage(id, entities);
+					}
+				}
+
+				if (!unchunkedImages.isEmpty()) {
+					OfyService.ofy().save().entities(unchunkedImages).now();
+				}
+				return null;
 			}
 		});
+	}
+
+	/**
+	 * Writes the ImageWrapper, its ImageChunks and their count in one (cross-group) transaction, and deletes the
+	 * chunks of a previous, larger version of the image, so that readers never see a mix of old and new data.
+	 *
+	 * @methodtype command
+	 */
+	protected void saveChunkedImage(final String id, final List<Object> entities) {
+		final int noChunks = entities.size() - 1;
+		OfyService.ofy().transact(new VoidWork() {
+			@Override
+			public void vrun() {
+				ImageChunkCount previous = OfyService.ofy().load().type(ImageChunkCount.class).id(id).now();
+				OfyService.ofy().save().entities(entities);
+				if (noChunks > 0) {
+					OfyService.ofy().save().entity(new ImageChunkCount(id, noChunks));
+				} else {
+					OfyService.ofy().delete().type(ImageChunkCount.class).id(id);
+				}
+
+				if ((previous != null) && (previous.getNoChunks() > noChunks)) {
+					List<Key<ImageChunk>> staleChunks = new ArrayList<Key<ImageChunk>>();
+					for (int i = noChunks + 1; i <= previous.getNoChunks(); i++) {
+						staleChunks.add(Key.create(ImageChunk.class, ImageChunk.asId(id, i)));
+					}
+					OfyService.ofy().delete().keys(staleChunks);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Splits the image data into an ImageWrapper and as many ImageChunks as needed. The image data is fetched once;
+	 * images that fit into one entity are stored without copying.
+	 *
+	 * @methodtype helper
+	 */
+	protected void addEntities(List<Object> entities, String id, Image image) {
+		byte[] imageData = image.getImageData();
+		int noChunks = getNoChunks(imageData.length);
+
+		ImageWrapper imageWrapper = new ImageWrapper(id);
+		if (noChunks == 0) {
+			imageWrapper.setImageData(imageData, imageData.length, 0);
+		} else {
+			imageWrapper.setImageData(Arrays.copyOf(imageData, CHUNK_SIZE), imageData.length, noChunks);
+		}
+		entities.add(imageWrapper);
+
+		for (int i = 1; i <= noChunks; i++) {
+			int from = i * CHUNK_SIZE;
+			int to = Math.min(imageData.length, from + CHUNK_SIZE);
+			entities.add(new ImageChunk(id, i, Arrays.copyOfRange(imageData, from, to)));
+		}
+	}
+
+	/**
+	 * Returns the number of chunks needed in addition to the ImageWrapper.
+	 *
+	 * @methodtype helper
+	 */
+	protected static int getNoChunks(int length) {
+		return (length <= CHUNK_SIZE) ? 0 : (length - 1) / CHUNK_SIZE;
+	}
+
+	@Override
+	protected Image doReadImage(final String photoIdAsString, final int size) throws IOException {
+		Image result = null;
+
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString + size);
 
 		if (imageWrapper == null) {
 			log.info(LogBuilder.createSystemMessage().addMessage("does not exist!").toString());
 		} else {
-			result = imageWrapper.getImage();
-			if (result != null) {
-				log.config(LogBuilder.createSystemMessage().addMessage("image successfully read").toString());
-			} else {
-				log.warning(LogBuilder.createSystemMessage().addMessage("ImageWrapper contains no Image").toString());
+			Map<String, ImageChunk> imageChunks = loadImageChunks(Collections.singletonList(imageWrapper));
+			result = ImagesServiceFactory.makeImage(imageWrapper.getImageData(imageChunks));
+			log.config(LogBuilder.createSystemMessage().addMessage("image successfully read").toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Loads all images with one batch get for the ImageWrappers and, if any image is split, one for the chunks.
+	 */
+	@Override
+	protected Map<PhotoSize, Serializable> doReadImages(String photoIdAsString, Collection<PhotoSize> sizes) {
+		final List<String> ids = new ArrayList<String>(sizes.size());
+		for (PhotoSize size : sizes) {
+			ids.add(photoIdAsString + size.asInt());
+		}
+
+		Map<String, ImageWrapper> imageWrappers = ObjectifyService.run(new Work<Map<String, ImageWrapper>>() {
+			@Override
+			public Map<String, ImageWrapper> run() {
+				return OfyService.ofy().load().type(ImageWrapper.class).ids(ids);
+			}
+		});
+		Map<String, ImageChunk> imageChunks = loadImageChunks(imageWrappers.values());
+
+		Map<PhotoSize, Serializable> result = new LinkedHashMap<PhotoSize, Serializable>();
+		for (PhotoSize size : sizes) {
+			ImageWrapper imageWrapper = imageWrappers.get(photoIdAsString + size.asInt());
+			if (imageWrapper != null) {
+				result.put(size, ImagesServiceFactory.makeImage(imageWrapper.getImageData(imageChunks)));
 			}
 		}
+		log.config(LogBuilder.createSystemMessage().addParameter("images successfully read", result.size()).toString());
 		return result;
 	}
 
+	/**
+	 * Deletes the ImageWrapper and all of its chunks in one transaction; the chunks are found by their count.
+	 */
+	@Override
+	protected void doDeleteImage(String photoIdAsString, int size) {
+		final String id = photoIdAsString + size;
+		ObjectifyService.run(new Work<Void>() {
+			@Override
+			public Void run() {
+				OfyService.ofy().transact(new VoidWork() {
+					@Override
+					public void vrun() {
+						ImageChunkCount chunkCount = OfyService.ofy().load().type(ImageChunkCount.class).id(id).now();
+						List<Key<?>> keys = new ArrayList<Key<?>>();
+						keys.add(Key.create(ImageWrapper.class, id));
+						if (chunkCount != null) {
+							keys.add(Key.create(ImageChunkCount.class, id));
+							for (int i = 1; i <= chunkCount.getNoChunks(); i++) {
+								keys.add(Key.create(ImageChunk.class, ImageChunk.asId(id, i)));
+							}
+						}
+						OfyService.ofy().delete().keys(keys);
+					}
+				});
+				return null;
+			}
+		});
+		log.config(LogBuilder.createSystemMessage().addMessage("image successfully deleted").toString());
+	}
+
+	/**
+	 * Streams the image data; chunks are loaded one at a time while reading.
+	 */
+	@Override
+	protected InputStream doOpenImageStream(String photoIdAsString, int size) {
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString + size);
+		return (imageWrapper == null) ? null : new ChunkInputStream(imageWrapper);
+	}
+
+	/**
+	 * Only the ImageWrapper is loaded, chunks are not needed.
+	 */
 	@Override
-	protected boolean doDoesImageExist(String photoIdAsString, int size) {
-		Image image = null;
-		boolean result = false;
-		try {
-			image = doReadImage(photoIdAsString, size);
-		} catch (IOException e) {
-			log.warning(
-					LogBuilder.createSystemMessage().addException("IOException when checking for Image existance", e)
-							.toString());
-		}
-		if (image != null) {
-			result = true;
+	protected long doGetImageLength(String photoIdAsString, int size) {
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString + size);
+		return (imageWrapper == null) ? -1 : imageWrapper.getLength();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected ImageWrapper loadImageWrapper(final String id) {
+		return ObjectifyService.run(new Work<ImageWrapper>() {
+			@Override
+			public ImageWrapper run() {
+				return OfyService.ofy().load().type(ImageWrapper.class).id(id).now();
+			}
+		});
+	}
+
+	/**
+	 * Loads the chunks of all given ImageWrappers with one batch get.
+	 *
+	 * @methodtype get
+	 */
+	protected Map<String, ImageChunk> loadImageChunks(Collection<ImageWrapper> imageWrappers) {
+		final List<String> chunkIds = new ArrayList<String>();
+		for (ImageWrapper imageWrapper : imageWrappers) {
+			for (int i = 1; i <= imageWrapper.getNoChunks(); i++) {
+				chunkIds.add(ImageChunk.asId(imageWrapper.getId(), i));
+			}
 		}
+
+		if (chunkIds.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		return ObjectifyService.run(new Work<Map<String, ImageChunk>>() {
+			@Override
+			public Map<String, ImageChunk> run() {
+				return OfyService.ofy().load().type(ImageChunk.class).ids(chunkIds);
+			}
+		});
+	}
+
+	/**
+	 * Uses a get by key, which unlike a query is strongly consistent, so a just written image is found.
+	 */
+	@Override
+	protected boolean doDoesImageExist(final String photoIdAsString, final int size) {
+		ImageWrapper wrapper = ObjectifyService.run(new Work<ImageWrapper>() {
+			@Override
+			public ImageWrapper run() {
+				Key<ImageWrapper> key = Key.create(ImageWrapper.class, photoIdAsString + size);
+				return OfyService.ofy().load().key(key).now();
+			}
+		});
+
+		boolean result = wrapper != null;
 		log.config(LogBuilder.createSystemMessage().addParameter("does image exist", result).toString());
 		return result;
 	}
 
 	/**
-	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify.
+	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify. It holds the first chunk of the
+	 * image data; larger images continue in {@link ImageChunk}s.
 	 * 
  	 * @review
 	 */
 	@Entity
 	public static class ImageWrapper {
 
-		// see https://cloud.google.com/datastore/docs/tools/administration
-		public final int maxEntitySize = 1024 * 1024; // = 1 MB
-
 		@Id
 		private String id;
 
 		private byte[] imageData;
 
+		/**
+		 * Total number of image bytes and number of additional chunks; both are 0 for images stored before chunking
+		 */
+		private int length;
+		private int noChunks;
+
 		public ImageWrapper() {
 			// just for Objectify to load it from Datastore
 		}
@@ -136,22 +384,198 @@ public class DatastoreAdapter extends ImageStorage {
 		/**
 		 * @methodtype get
 		 */
-		public Image getImage() {
-			return ImagesServiceFactory.makeImage(imageData);
+		public String getId() {
+			return id;
 		}
 
 		/**
-		 * @methodtype set
+		 * @methodtype get
+		 */
+		public int getLength() {
+			return (noChunks == 0) ? imageData.length : length;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public int getNoChunks() {
+			return noChunks;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public byte[] getFirstChunk() {
+			return imageData;
+		}
+
+		/**
+		 * Assembles the image data from this wrapper and the given chunks; unsplit images are returned without copy.
 		 *
-		 * Can not handle images >= 1 MB because this is the upper limit of entities in Google Datastore.
+		 * @methodtype get
+		 */
+		public byte[] getImageData(Map<String, ImageChunk> imageChunks) throws IllegalStateException {
+			if (noChunks == 0) {
+				return imageData;
+			}
+
+			byte[] result = new byte[length];
+			System.arraycopy(imageData, 0, result, 0, imageData.length);
+			int position = imageData.length;
+			for (int i = 1; i <= noChunks; i++) {
+				ImageChunk imageChunk = imageChunks.get(ImageChunk.asId(id, i));
+				if (imageChunk == null) {
+					throw new IllegalStateException("missing chunk " + i + " of image " + id);
+				}
+				byte[] data = imageChunk.getData();
+				System.arraycopy(data, 0, result, position, data.length);
+				position += data.length;
+			}
+			return result;
+		}
+
+		/**
+		 * @methodtype set
+		 */
+		public void setImageData(byte[] firstChunk, int length, int noChunks) {
+			this.imageData = firstChunk;
+			this.length = length;
+			this.noChunks = noChunks;
+		}
+	}
+
+	/**
+	 * A part of the image data of an {@link ImageWrapper} that does not fit into the wrapper entity itself.
+	 */
+	@Entity
+	public static class ImageChunk {
+
+		@Id
+		private String id;
+
+		private byte[] data;
+
+		public ImageChunk() {
+			// just for Objectify to load it from Datastore
+		}
+
+		public ImageChunk(String imageWrapperId, int index, byte[] data) {
+			this.id = asId(imageWrapperId, index);
+			this.data = data;
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		public static String asId(String imageWrapperId, int index) {
+			return imageWrapperId + "/" + index;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+	/**
+	 * The number of ImageChunks of a split image, kept apart from the {@link ImageWrapper}, so that the chunks of a
+	 * previous version can be found without loading its image data.
+	 */
+	@Entity
+	public static class ImageChunkCount {
+
+		@Id
+		private String id;
+
+		private int noChunks;
+
+		public ImageChunkCount() {
+			// just for Objectify to load it from Datastore
+		}
+
+		public ImageChunkCount(String imageWrapperId, int noChunks) {
+			this.id = imageWrapperId;
+			this.noChunks = noChunks;
+		}
+
+		/**
+		 * @methodtype get
 		 */
-		public void setImage(Image image) throws ArrayIndexOutOfBoundsException {
-			if(image.getImageData().length >= maxEntitySize) {
-				throw new ArrayIndexOutOfBoundsException("Can not store images >= 1 MB in the Google Datastore.");
+		public int getNoChunks() {
+			return noChunks;
+		}
+	}
+
+	/**
+	 * Reads the image data of an ImageWrapper and loads its chunks one by one, only when they are reached.
+	 */
+	protected class ChunkInputStream extends InputStream {
+
+		protected final ImageWrapper imageWrapper;
+		protected byte[] current;
+		protected int position = 0;
+		protected int nextChunk = 1;
+
+		public ChunkInputStream(ImageWrapper imageWrapper) {
+			this.imageWrapper = imageWrapper;
+			this.current = imageWrapper.getFirstChunk();
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected boolean hasMoreData() throws IOException {
+			while (current != null && position >= current.length) {
+				if (nextChunk > imageWrapper.getNoChunks()) {
+					current = null;
+				} else {
+					ImageChunk imageChunk = loadImageChunk(ImageChunk.asId(imageWrapper.getId(), nextChunk++));
+					if (imageChunk == null) {
+						throw new IOException("missing chunk of image " + imageWrapper.getId());
+					}
+					current = imageChunk.getData();
+					position = 0;
+				}
+			}
+			return current != null;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return hasMoreData() ? (current[position++] & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
 			}
-			else {
-				imageData = image.getImageData();
+			if (!hasMoreData()) {
+				return -1;
 			}
+			int result = Math.min(length, current.length - position);
+			System.arraycopy(current, position, buffer, offset, result);
+			position += result;
+			return result;
 		}
+
+		@Override
+		public int available() {
+			return (current == null) ? 0 : current.length - position;
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected ImageChunk loadImageChunk(final String id) {
+		return ObjectifyService.run(new Work<ImageChunk>() {
+			@Override
+			public ImageChunk run() {
+				return OfyService.ofy().load().type(ImageChunk.class).id(id).now();
+			}
+		});
 	}
 }
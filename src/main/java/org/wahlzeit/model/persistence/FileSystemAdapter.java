@@ -0,0 +1,220 @@
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.SysConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Adapter for the local file system, meant for self-hosted instances; App Engine does not allow writing files.
+ * Images are laid out as &lt;photos dir&gt;/&lt;photo id&gt;/&lt;size&gt;. Files are written to a temporary file
+ * first and then renamed, so readers never see partially written images.
+ */
+public class FileSystemAdapter extends ImageStorage {
+
+	private static final Logger log = Logger.getLogger(FileSystemAdapter.class.getName());
+
+	/**
+	 *
+	 */
+	protected static final String TEMP_FILE_PREFIX = "image-";
+	protected static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/**
+	 * Ids that may be used as directory names
+	 */
+	protected static final Pattern FILE_NAME_ID_PATTERN = Pattern.compile("[0-9A-Za-z]+");
+
+	/**
+	 *
+	 */
+	protected final File rootDir;
+
+	/**
+	 * Stores images in the photos directory of the SysConfig.
+	 */
+	public FileSystemAdapter() {
+		this(new File(SysConfig.getPhotosDir().asString()));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public FileSystemAdapter(File myRootDir) {
+		rootDir = myRootDir;
+	}
+
+	@Override
+	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
+			throws IOException, InvalidParameterException {
+		if (!(image instanceof Image)) {
+			log.warning(LogBuilder.createSystemMessage().
+					addMessage("did not get an Image type to store").
+					addParameter("image type", image.toString()).toString());
+			return;
+		}
+
+		File file = getImageFile(photoIdAsString, size);
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("could not create directory " + dir);
+		}
+
+		// the temp file lives in the target directory, so that the rename does not cross file systems
+		File tempFile = File.createTempFile(TEMP_FILE_PREFIX + file.getName() + "-", TEMP_FILE_SUFFIX, dir);
+		try {
+			OutputStream output = new FileOutputStream(tempFile);
+			try {
+				output.write(((Image) image).getImageData());
+			} finally {
+				output.close();
+			}
+			moveFile(tempFile, file);
+		} finally {
+			if (tempFile.exists() && !tempFile.delete()) {
+				log.warning(LogBuilder.createSystemMessage().
+						addParameter("could not delete temp file", tempFile).toString());
+			}
+		}
+
+		log.config(LogBuilder.createSystemMessage().addMessage("image successfully written").toString());
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void moveFile(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	protected Image doReadImage(String photoIdAsString, int size) throws IOException {
+		File file = getImageFile(photoIdAsString, size);
+		if (!file.isFile()) {
+			log.info(LogBuilder.createSystemMessage().addMessage("does not exist!").toString());
+			return null;
+		}
+
+		return ImagesServiceFactory.makeImage(Files.readAllBytes(file.toPath()));
+	}
+
+	@Override
+	protected InputStream doOpenImageStream(String photoIdAsString, int size) throws IOException {
+		File file = getImageFile(photoIdAsString, size);
+		return file.isFile() ? new FileInputStream(file) : null;
+	}
+
+	@Override
+	protected long doGetImageLength(String photoIdAsString, int size) {
+		File file = getImageFile(photoIdAsString, size);
+		return file.isFile() ? file.length() : -1;
+	}
+
+	/**
+	 * Uses FileChannel.transferTo, so the data does not pass through the heap.
+	 */
+	@Override
+	protected long doTransferImageTo(String photoIdAsString, int size, long position, long count,
+									 WritableByteChannel target) throws IOException {
+		File file = getImageFile(photoIdAsString, size);
+		if (!file.isFile()) {
+			return -1;
+		}
+
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			long end = Math.min(channel.size(), position + count);
+			long current = position;
+			while (current < end) {
+				long transferred = channel.transferTo(current, end - current, target);
+				if (transferred <= 0) {
+					break;
+				}
+				current += transferred;
+			}
+			return current - position;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Also deletes the directory of the photo id once it is empty.
+	 */
+	@Override
+	protected void doDeleteImage(String photoIdAsString, int size) throws IOException {
+		File file = getImageFile(photoIdAsString, size);
+		Files.deleteIfExists(file.toPath());
+
+		String[] remainingFiles = file.getParentFile().list();
+		if (remainingFiles != null && remainingFiles.length == 0 && !file.getParentFile().delete()) {
+			log.warning(LogBuilder.createSystemMessage().
+					addParameter("could not delete directory", file.getParentFile()).toString());
+		}
+	}
+
+	@Override
+	public boolean isStreamingPreferred() {
+		return true;
+	}
+
+	@Override
+	protected boolean doDoesImageExist(String photoIdAsString, int size) {
+		return isFileNameId(photoIdAsString) && getImageFile(photoIdAsString, size).isFile();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected File getImageFile(String photoIdAsString, int size) throws IllegalArgumentException {
+		assertIsFileNameId(photoIdAsString);
+		return new File(new File(rootDir, photoIdAsString), String.valueOf(size));
+	}
+
+	/**
+	 * Photo ids consist of letters and digits only, so an id with path separators or dots can not address a file
+	 * outside its own directory.
+	 *
+	 * @methodtype assertion
+	 */
+	protected void assertIsFileNameId(String photoIdAsString) throws IllegalArgumentException {
+		if (!isFileNameId(photoIdAsString)) {
+			throw new IllegalArgumentException("Invalid photoId:" + photoIdAsString);
+		}
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	protected boolean isFileNameId(String photoIdAsString) {
+		return photoIdAsString != null && FILE_NAME_ID_PATTERN.matcher(photoIdAsString).matches();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public File getRootDir() {
+		return rootDir;
+	}
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.SysConfig;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A cache for image renditions that is bounded by the number of bytes it holds. Misses are loaded from the
+ * {@link ImageStorage}, so images can be loaded on first access instead of at startup. Least recently used images
+ * are evicted first.
+ */
+public class ImageCache {
+
+	private static final Logger log = Logger.getLogger(ImageCache.class.getName());
+	private static ImageCache instance = null;
+
+	/**
+	 * A single image should occupy at most this fraction of the capacity to be cached on purpose
+	 */
+	public static final int MAX_IMAGE_SHARE = 8;
+
+	/**
+	 * Access-ordered; guarded by this
+	 */
+	protected final LinkedHashMap<String, Image> images = new LinkedHashMap<String, Image>(64, 0.75f, true);
+
+	/**
+	 *
+	 */
+	protected long capacity;
+	protected long noBytes = 0;
+
+	/**
+	 *
+	 */
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @methodtype get
+	 */
+	public static synchronized ImageCache getInstance() {
+		if (instance == null) {
+			setInstance(new ImageCache(SysConfig.getImageCacheCapacity()));
+		}
+		return instance;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public static synchronized void setInstance(ImageCache newInstance) {
+		log.config(LogBuilder.createSystemMessage().
+				addAction("set ImageCache instance").
+				addParameter("capacity", newInstance.getCapacity()).toString());
+		instance = newInstance;
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public ImageCache(long myCapacity) {
+		if (myCapacity < 0) {
+			throw new IllegalArgumentException("image cache capacity must not be negative: " + myCapacity);
+		}
+		capacity = myCapacity;
+	}
+
+	/**
+	 * Returns the image from the cache or loads it from the image storage. When the image does not exist, null is
+	 * returned.
+	 *
+	 * @methodtype get
+	 */
+	public Image getImage(String photoIdAsString, PhotoSize photoSize) {
+		String key = asKey(photoIdAsString, photoSize);
+		Image result;
+		synchronized (this) {
+			result = images.get(key);
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+
+		misses.incrementAndGet();
+		result = loadImage(photoIdAsString, photoSize);
+		if (result != null) {
+			putImage(photoIdAsString, photoSize, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the image only if it is in the cache, without loading it.
+	 *
+	 * @methodtype get
+	 */
+	public synchronized Image getCachedImage(String photoIdAsString, PhotoSize photoSize) {
+		return images.get(asKey(photoIdAsString, photoSize));
+	}
+
+	/**
+	 * Tells whether an image of the given number of bytes is small enough to be worth caching; larger images
+	 * should rather be streamed from the image storage.
+	 *
+	 * @methodtype boolean-query
+	 */
+	public synchronized boolean isCacheable(long noImageBytes) {
+		return noImageBytes <= capacity / MAX_IMAGE_SHARE;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Image loadImage(String photoIdAsString, PhotoSize photoSize) {
+		try {
+			Serializable rawImage = ImageStorage.getInstance().readImage(photoIdAsString, photoSize.asInt());
+			if (rawImage instanceof Image) {
+				return (Image) rawImage;
+			}
+		} catch (IOException e) {
+			log.warning(LogBuilder.createSystemMessage().
+					addParameter("size", photoSize.asString()).
+					addParameter("photo ID", photoIdAsString).
+					addException("Could not load image", e).toString());
+		}
+		return null;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void putImage(String photoIdAsString, PhotoSize photoSize, Image image) {
+		long imageSize = getSizeOf(image);
+		if (imageSize > capacity) {
+			return; // would evict everything else
+		}
+
+		Image old = images.put(asKey(photoIdAsString, photoSize), image);
+		if (old != null) {
+			noBytes -= getSizeOf(old);
+		}
+		noBytes += imageSize;
+
+		Iterator<Map.Entry<String, Image>> i = images.entrySet().iterator();
+		while (noBytes > capacity && i.hasNext()) {
+			noBytes -= getSizeOf(i.next().getValue());
+			i.remove();
+		}
+	}
+
+	/**
+	 * Removes all sizes of the given photo.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized void invalidate(String photoIdAsString) {
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			Image old = images.remove(asKey(photoIdAsString, photoSize));
+			if (old != null) {
+				noBytes -= getSizeOf(old);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected String asKey(String photoIdAsString, PhotoSize photoSize) {
+		return photoIdAsString + "/" + photoSize.asInt();
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected long getSizeOf(Image image) {
+		byte[] data = image.getImageData();
+		return (data == null) ? 0 : data.length;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoBytes() {
+		return noBytes;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int getNoImages() {
+		return images.size();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+}
@@ -1,11 +1,23 @@
 package org.wahlzeit.model.persistence;
 
+import com.google.appengine.api.images.Image;
 import org.wahlzeit.model.PhotoSize;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.StructuredLogBuilder;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.InvalidParameterException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -18,6 +30,16 @@ public abstract class ImageStorage {
 	private static final Logger log = Logger.getLogger(ImageStorage.class.getName());
 	private static ImageStorage instance = null;
 
+	/**
+	 * Buffer size for transferring image data to a channel
+	 */
+	protected static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Originals are stored under the id of their photo with this size, which no PhotoSize uses
+	 */
+	public static final int ORIGINAL_SIZE = -1;
+
 	/**
 	 * @methodtype get
 	 */
@@ -34,9 +56,9 @@ public abstract class ImageStorage {
 	 * @methodtype set
 	 */
 	public static void setInstance(ImageStorage newInstance) {
-		log.config(LogBuilder.createSystemMessage().
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
 				addAction("set ImageStorage instance").
-				addParameter("instance", newInstance).toString());
+				addParameter("instance", newInstance).log();
 		instance = newInstance;
 	}
 
@@ -57,11 +79,11 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
 				addAction("write image to storage").
 				addParameter("image", image).
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size).log();
 
 		doWriteImage(image, photoIdAsString, size);
 	}
@@ -75,9 +97,99 @@ public abstract class ImageStorage {
 	protected abstract void doWriteImage(Serializable image, String photoIdAsString, int size)
 			throws IOException, InvalidParameterException;
 
+	/**
+	 * Writes several sizes of one photo at once. Sizes are written in ascending order; if a size can not be stored,
+	 * it and all larger sizes are skipped.
+	 *
+	 * @methodtype command
+	 * @methodproperty wrapper
+	 * @return the sizes that have been written
+	 */
+	public Set<PhotoSize> writeImages(String photoIdAsString, Map<PhotoSize, ? extends Serializable> images)
+			throws IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		for (Serializable image : images.values()) {
+			assertImageNotNull(image);
+		}
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("write images to storage").
+				addParameter("photo id", photoIdAsString).
+				addParameter("sizes", images.keySet()).log();
+
+		if (images.isEmpty()) {
+			return EnumSet.noneOf(PhotoSize.class);
+		}
+
+		return doWriteImages(photoIdAsString, new TreeMap<PhotoSize, Serializable>(images));
+	}
+
+	/**
+	 * Actually writes the images, given in ascending order of size. Storages that support batch writes should
+	 * override this; the default writes one image after the other.
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected Set<PhotoSize> doWriteImages(String photoIdAsString, Map<PhotoSize, Serializable> images)
+			throws IOException {
+
+		Set<PhotoSize> result = EnumSet.noneOf(PhotoSize.class);
+		for (Map.Entry<PhotoSize, Serializable> entry : images.entrySet()) {
+			try {
+				doWriteImage(entry.getValue(), photoIdAsString, entry.getKey().asInt());
+			} catch (RuntimeException e) {
+				StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+						addParameter("size", entry.getKey().asString()).
+						addException("Problem when storing image", e).log();
+				break;
+			}
+			result.add(entry.getKey());
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the uploaded original of a photo, from which its images are created later on.
+	 *
+	 * @methodtype command
+	 * @methodproperty convenience
+	 */
+	public void writeOriginalImage(Serializable image, String photoIdAsString)
+			throws InvalidParameterException, IOException {
+
+		assertImageNotNull(image);
+		assertValidPhotoId(photoIdAsString);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("write original image to storage").
+				addParameter("photo id", photoIdAsString).log();
+
+		doWriteImage(image, photoIdAsString, ORIGINAL_SIZE);
+	}
+
 
 	// read methods ----------------------------------------------------------------------------------------------------
 
+	/**
+	 * Reads the original of a photo written by writeOriginalImage(), or null if there is none.
+	 *
+	 * @methodtype get
+	 * @methodproperty convenience
+	 */
+	public Serializable readOriginalImage(String photoIdAsString)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("read original image from storage").
+				addParameter("photo id", photoIdAsString).log();
+
+		return doReadImage(photoIdAsString, ORIGINAL_SIZE);
+	}
+
 	/**
 	 * Reads an image from storage via photoId and the size. When the image is not found, null is returned.
 	 *
@@ -90,10 +202,10 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
 				addAction("read image from storage").
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size).log();
 
 		return doReadImage(photoIdAsString, size);
 	}
@@ -107,6 +219,243 @@ public abstract class ImageStorage {
 	protected abstract Serializable doReadImage(String filename, int size)
 			throws IOException;
 
+	/**
+	 * Reads several sizes of one photo at once. Sizes that are not found are missing in the result.
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public Map<PhotoSize, Serializable> readImages(String photoIdAsString, Collection<PhotoSize> sizes)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("read images from storage").
+				addParameter("photo id", photoIdAsString).
+				addParameter("sizes", sizes).log();
+
+		if (sizes.isEmpty()) {
+			return new LinkedHashMap<PhotoSize, Serializable>();
+		}
+
+		return doReadImages(photoIdAsString, sizes);
+	}
+
+	/**
+	 * Actually reads the images. Storages that support batch reads should override this; the default reads one
+	 * image after the other.
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected Map<PhotoSize, Serializable> doReadImages(String photoIdAsString, Collection<PhotoSize> sizes)
+			throws IOException {
+
+		Map<PhotoSize, Serializable> result = new LinkedHashMap<PhotoSize, Serializable>();
+		for (PhotoSize size : sizes) {
+			Serializable image = doReadImage(photoIdAsString, size.asInt());
+			if (image != null) {
+				result.put(size, image);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Opens a stream on the data of the specified image, so it can be passed on without holding all of it in memory.
+	 * When the image is not found, null is returned. The caller has to close the stream.
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public InputStream openImageStream(String photoIdAsString, int size)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("open image stream").
+				addParameter("photo id", photoIdAsString).
+				addParameter("size", size).log();
+
+		return doOpenImageStream(photoIdAsString, size);
+	}
+
+	/**
+	 * Actually opens the stream. Storages that can stream should override this; the default reads the whole image.
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected InputStream doOpenImageStream(String photoIdAsString, int size)
+			throws IOException {
+
+		Serializable image = doReadImage(photoIdAsString, size);
+		if (image instanceof Image) {
+			return new ByteArrayInputStream(((Image) image).getImageData());
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns the number of bytes of the specified image, or -1 if it does not exist.
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public long getImageLength(String photoIdAsString, int size)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		return doGetImageLength(photoIdAsString, size);
+	}
+
+	/**
+	 * Actually determines the length. Storages that know the length without reading the image should override this.
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected long doGetImageLength(String photoIdAsString, int size)
+			throws IOException {
+
+		InputStream input = doOpenImageStream(photoIdAsString, size);
+		if (input == null) {
+			return -1;
+		}
+
+		try {
+			long result = 0;
+			byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+			for (int noBytes = input.read(buffer); noBytes != -1; noBytes = input.read(buffer)) {
+				result += noBytes;
+			}
+			return result;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes count bytes of the specified image, starting at position, to the target channel, using a bounded
+	 * buffer at most. Returns the number of bytes written, which is less than count if the image ends before, or -1
+	 * if the image does not exist.
+	 *
+	 * @methodtype command
+	 * @methodproperty wrapper
+	 */
+	public long transferImageTo(String photoIdAsString, int size, long position, long count,
+								WritableByteChannel target) throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+		if (position < 0 || count < 0) {
+			throw new IllegalArgumentException("invalid range: " + position + ", " + count);
+		}
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("transfer image").
+				addParameter("photo id", photoIdAsString).
+				addParameter("size", size).
+				addParameter("position", position).
+				addParameter("count", count).log();
+
+		return doTransferImageTo(photoIdAsString, size, position, count, target);
+	}
+
+	/**
+	 * Actually transfers the image data; the default copies from the image stream.
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected long doTransferImageTo(String photoIdAsString, int size, long position, long count,
+									 WritableByteChannel target) throws IOException {
+
+		InputStream input = doOpenImageStream(photoIdAsString, size);
+		if (input == null) {
+			return -1;
+		}
+
+		try {
+			long skipped = 0;
+			while (skipped < position) {
+				long noBytes = input.skip(position - skipped);
+				if (noBytes <= 0) {
+					if (input.read() == -1) {
+						return 0;
+					}
+					noBytes = 1;
+				}
+				skipped += noBytes;
+			}
+
+			long result = 0;
+			byte[] buffer = new byte[(int) Math.min(TRANSFER_BUFFER_SIZE, Math.max(count, 1))];
+			while (result < count) {
+				int noBytes = input.read(buffer, 0, (int) Math.min(buffer.length, count - result));
+				if (noBytes == -1) {
+					break;
+				}
+				ByteBuffer data = ByteBuffer.wrap(buffer, 0, noBytes);
+				while (data.hasRemaining()) {
+					target.write(data);
+				}
+				result += noBytes;
+			}
+			return result;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Tells whether images should rather be streamed from this storage than be read into memory, e.g. because it
+	 * can transfer them without copying.
+	 *
+	 * @methodtype boolean-query
+	 */
+	public boolean isStreamingPreferred() {
+		return false;
+	}
+
+
+	// delete methods --------------------------------------------------------------------------------------------------
+
+	/**
+	 * Deletes the original of a photo once it is not needed anymore, i.e. after all images have been created from it.
+	 * Deleting an original that does not exist has no effect.
+	 *
+	 * @methodtype command
+	 * @methodproperty convenience
+	 */
+	public void deleteOriginalImage(String photoIdAsString)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("delete original image from storage").
+				addParameter("photo id", photoIdAsString).log();
+
+		doDeleteImage(photoIdAsString, ORIGINAL_SIZE);
+	}
+
+	/**
+	 * Actually deletes the specified image; does nothing if it does not exist.
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected abstract void doDeleteImage(String photoIdAsString, int size)
+			throws IOException;
+
 
 	// exist method ----------------------------------------------------------------------------------------------------
 
@@ -122,10 +471,10 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
 				addAction("check if image exists in storage").
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size).log();
 
 		return doDoesImageExist(photoIdAsString, size);
 	}
@@ -33,11 +33,21 @@ public abstract class DataObject implements Persistent, Serializable {
 	 */
 	public static final String ID = "id";
 
+	/**
+	 * Field groups for incWriteCount(int); subclasses define their own groups as single bits
+	 */
+	public static final int ALL_FIELDS = ~0;
+
 	/**
 	 *
 	 */
 	protected transient int writeCount = 0;
 
+	/**
+	 * The field groups that changed since the last reset
+	 */
+	protected transient int changedFields = 0;
+
 	/**
 	 *
 	 */
@@ -50,13 +60,30 @@ public abstract class DataObject implements Persistent, Serializable {
 	 */
 	public final void resetWriteCount() {
 		writeCount = 0;
+		changedFields = 0;
 	}
 
 	/**
-	 *
+	 * Marks all fields as changed, as the caller does not tell which ones did
 	 */
 	public final void incWriteCount() {
+		incWriteCount(ALL_FIELDS);
+	}
+
+	/**
+	 * @param fields the field groups that changed
+	 */
+	public final void incWriteCount(int fields) {
 		writeCount++;
+		changedFields |= fields;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 * @return true if any of the given field groups changed since the last reset
+	 */
+	public final boolean hasChanged(int fields) {
+		return (changedFields & fields) != 0;
 	}
 
 	/**
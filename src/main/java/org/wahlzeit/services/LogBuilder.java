@@ -60,26 +60,32 @@ public class LogBuilder {
 	protected static LogBuilder doCreateMessage(String level) {
 		LogBuilder result = new LogBuilder();
 		Session session = SessionManager.getThreadLocalSession();
-		String sessionName;
-		String clientName;
+
+		result.add(LEVEL + NAME_VALUE_SEPARATOR + level);
+		result.add(SESSION + NAME_VALUE_SEPARATOR + getSessionName(session));
+		result.add(CLIENT + NAME_VALUE_SEPARATOR + getClientName(session));
+
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static String getSessionName(Session session) {
+		return (session != null) ? session.getName() : Session.NO_SESSION;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static String getClientName(Session session) {
 		if (session != null) {
-			sessionName = session.getName();
 			Client client = UserManager.getInstance().getClientById(session.getClientId());
 			if (client != null) {
-				clientName = client.getNickName();
-			} else {
-				clientName = UserSession.ANONYMOUS_CLIENT;
+				return client.getNickName();
 			}
-		} else {
-			sessionName = Session.NO_SESSION;
-			clientName = UserSession.ANONYMOUS_CLIENT;
 		}
-
-		result.add(LEVEL + NAME_VALUE_SEPARATOR + level);
-		result.add(SESSION + NAME_VALUE_SEPARATOR + sessionName);
-		result.add(CLIENT + NAME_VALUE_SEPARATOR + clientName);
-
-		return result;
+		return UserSession.ANONYMOUS_CLIENT;
 	}
 
 	/**
@@ -25,6 +25,7 @@ import com.google.appengine.api.datastore.KeyFactory;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -48,8 +49,10 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("Datastore: load entity").
+				addParameter("type", type).
+				addParameter("id", id).log();
 		return OfyService.ofy().load().type(type).id(id).now();
 	}
 
@@ -69,8 +72,10 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("Datastore: load entity").
+				addParameter("type", type).
+				addParameter("id", id).log();
 		return OfyService.ofy().load().type(type).id(id).now();
 	}
 
@@ -83,9 +88,10 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(parameterName, "parameterName");
 		assertIsNonNullArgument(value, "value");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with parameter " +
-						parameterName + " == " + value + " from datastore.").toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addAction("Datastore: load entity").
+				addParameter("type", type).
+				addParameter(parameterName, value).log();
 
 		return OfyService.ofy().load().type(type).ancestor(applicationRootKey).filter(parameterName, value).first()
 				.now();
@@ -98,11 +104,11 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(result, "result");
 		assertIsNonNullArgument(type, "type");
 
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: load all entities of type", type.getName()).toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addParameter("Datastore: load all entities of type", type.getName()).log();
 		List<E> objects = OfyService.ofy().load().type(type).ancestor(applicationRootKey).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addParameter("Datastore: number of loaded objects", objects.size()).log();
 		result.addAll(objects);
 	}
 
@@ -116,22 +122,45 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
-				addMessage("Datastore: Load all Entities of type " + type.toString() + " where parameter "
-						+ propertyName + " = " + value.toString() + " from datastore.").toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+				addAction("Datastore: load all entities").
+				addParameter("type", type).
+				addParameter(propertyName, value).log();
 		List<E> objects = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addParameter("Datastore: number of loaded objects", objects.size()).log();
 		result.addAll(objects);
 	}
 
 	/**
-	 * Updates all entities of the given collection in the datastore.
+	 * Updates all entities of the given collection in the datastore, in as few batches as possible.
 	 */
 	protected void updateObjects(Collection<? extends Persistent> collection) {
-		for (Persistent object : collection) {
-			updateObject(object);
+		UnitOfWork.begin();
+		try {
+			for (Persistent object : collection) {
+				updateObject(object);
+			}
+		} finally {
+			UnitOfWork.end();
+		}
+	}
+
+	/**
+	 * Saves all entities of the given collection in one batch and waits until they are saved, even within a unit of
+	 * work; for writes that other state may only reflect once they succeeded.
+	 */
+	protected void writeObjectsNow(Collection<? extends Persistent> collection) {
+		assertIsNonNullArgument(collection, "collection");
+
+		if (!collection.isEmpty()) {
+			StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+					addParameter("Datastore: write entities", collection.size()).log();
+			OfyService.ofy().save().entities(collection).now();
+			for (Persistent object : collection) {
+				object.resetWriteCount();
+			}
 		}
 	}
 
@@ -143,23 +172,36 @@ public abstract class ObjectManager {
 	}
 
 	/**
-	 * Writes the given entity to the datastore.
+	 * Writes the given entity to the datastore. Within a unit of work, the entity is only saved with the next batch,
+	 * and so are the writes of its dependents.
 	 */
 	protected void writeObject(Persistent object) {
 		assertIsNonNullArgument(object, "object");
 
-		if (object.isDirty()) {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: Write object of type", object).toString());
-			OfyService.ofy().save().entity(object).now();
-			updateDependents(object);
-			object.resetWriteCount();
+		UnitOfWork unitOfWork = UnitOfWork.getCurrent();
+		if (unitOfWork != null && object.isDirty()) {
+			StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+					addParameter("Datastore: Queue object of type", object).log();
+			unitOfWork.add(this, object);
+		} else if (object.isDirty()) {
+			writeObjectNow(object);
 		} else {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: No need to update object", object).toString());
+			StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+					addParameter("Datastore: No need to update object", object).log();
 		}
 	}
 
+	/**
+	 * Saves the given entity and its dependents right away, even within a unit of work.
+	 */
+	protected void writeObjectNow(Persistent object) {
+		StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+				addParameter("Datastore: Write object of type", object).log();
+		OfyService.ofy().save().entity(object).now();
+		updateDependents(object);
+		object.resetWriteCount();
+	}
+
 	/**
 	 * Updates all dependencies of the object.
 	 */
@@ -173,10 +215,24 @@ public abstract class ObjectManager {
 	protected <E> void deleteObject(E object) {
 		assertIsNonNullArgument(object, "object");
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Datastore: delete entity", object).toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+				addParameter("Datastore: delete entity", object).log();
 		OfyService.ofy().delete().entity(object).now();
 	}
 
+	/**
+	 * Deletes the given entities from the datastore in one batch.
+	 */
+	protected void deleteObjects(Collection<?> objects) {
+		assertIsNonNullArgument(objects, "objects");
+
+		if (!objects.isEmpty()) {
+			StructuredLogBuilder.createSystemMessage(log, Level.CONFIG).
+					addParameter("Datastore: delete entities", objects.size()).log();
+			OfyService.ofy().delete().entities(objects).now();
+		}
+	}
+
 	/**
 	 * Deletes all entities of the type that have a property with the specified value, e.g.
 	 * deleteObjects(PhotoCase.class, "wasDecided", true) to delete all cases that have been decided.
@@ -186,9 +242,10 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
-				addMessage("Datastore: delete entities of type " + type
-						+ " where property " + propertyName + " == " + value).toString());
+		StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+				addAction("Datastore: delete entities").
+				addParameter("type", type).
+				addParameter(propertyName, value).log();
 		List<com.googlecode.objectify.Key<E>> keys = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).keys().list();
 		OfyService.ofy().delete().keys(keys);
@@ -11,8 +11,12 @@ import org.wahlzeit.model.Guest;
 import org.wahlzeit.model.Moderator;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoCase;
+import org.wahlzeit.model.PraiseShard;
+import org.wahlzeit.model.PraiseTotal;
 import org.wahlzeit.model.Tag;
 import org.wahlzeit.model.User;
+import org.wahlzeit.model.persistence.DatastoreAdapter.ImageChunk;
+import org.wahlzeit.model.persistence.DatastoreAdapter.ImageChunkCount;
 import org.wahlzeit.model.persistence.DatastoreAdapter.ImageWrapper;
 
 /**
@@ -37,6 +41,10 @@ public class OfyService {
 		factory().register(Guest.class);
 		factory().register(PhotoCase.class);
 		factory().register(ImageWrapper.class);
+		factory().register(ImageChunk.class);
+		factory().register(ImageChunkCount.class);
+		factory().register(PraiseShard.class);
+		factory().register(PraiseTotal.class);
 	}
 
 	public static Objectify ofy() {
@@ -0,0 +1,260 @@
+package org.wahlzeit.services;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builder class for log messages in JSON, one object per line, with the same level, session and client information
+ * as the messages of the <code>LogBuilder</code>.
+ *
+ * A builder is bound to a logger and a level. If the logger does not log at that level, a shared builder is returned
+ * that ignores everything, so disabled log messages neither allocate nor format anything. Parameter values are only
+ * turned into strings, and the session and client only looked up, when the message is logged.
+ */
+public class StructuredLogBuilder {
+
+	/**
+	 * Upper bound of the per-thread buffer that is kept between messages
+	 */
+	protected static final int MAX_KEPT_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 *
+	 */
+	protected static final int INITIAL_NO_FIELDS = 8;
+
+	/**
+	 *
+	 */
+	protected static final StructuredLogBuilder DISABLED = new StructuredLogBuilder(null, null, null) {
+		@Override
+		protected StructuredLogBuilder add(String name, Object value) {
+			return this;
+		}
+
+		@Override
+		public void log() {
+			// do nothing
+		}
+	};
+
+	/**
+	 *
+	 */
+	protected static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	/**
+	 *
+	 */
+	protected final Logger logger;
+	protected final Level level;
+	protected final String messageLevel;
+
+	/**
+	 *
+	 */
+	protected String[] names = new String[INITIAL_NO_FIELDS];
+	protected Object[] values = new Object[INITIAL_NO_FIELDS];
+	protected int noFields = 0;
+
+	/**
+	 *
+	 */
+	protected StructuredLogBuilder(Logger myLogger, Level myLevel, String myMessageLevel) {
+		logger = myLogger;
+		level = myLevel;
+		messageLevel = myMessageLevel;
+	}
+
+
+	// create-methods --------------------------------------------------------------------------------------------------
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Creates a builder for a system message, or the disabled builder if log does not log at level.
+	 */
+	public static StructuredLogBuilder createSystemMessage(Logger log, Level level) {
+		return doCreateMessage(log, level, LogBuilder.SYSTEM_LEVEL);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Creates a builder for a user message, or the disabled builder if log does not log at level.
+	 */
+	public static StructuredLogBuilder createUserMessage(Logger log, Level level) {
+		return doCreateMessage(log, level, LogBuilder.USER_LEVEL);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static StructuredLogBuilder doCreateMessage(Logger log, Level level, String messageLevel) {
+		if (!log.isLoggable(level)) {
+			return DISABLED;
+		}
+		return new StructuredLogBuilder(log, level, messageLevel);
+	}
+
+
+	// add-methods -----------------------------------------------------------------------------------------------------
+
+	/**
+	 * @methodtype mutate
+	 *
+	 * Adds "name": "value"; value is converted to a string only when the message is logged.
+	 */
+	public StructuredLogBuilder addParameter(String name, Object value) {
+		return add(name, value);
+	}
+
+	/**
+	 * @methodtype mutate
+	 */
+	public StructuredLogBuilder addMessage(String message) {
+		return add(LogBuilder.MESSAGE, message);
+	}
+
+	/**
+	 * @methodtype mutate
+	 */
+	public StructuredLogBuilder addAction(String action) {
+		return add(LogBuilder.ACTION, action);
+	}
+
+	/**
+	 * @methodtype mutate
+	 *
+	 * Adds the exceptionMessage and the stacktrace of throwable.
+	 */
+	public StructuredLogBuilder addException(String exceptionMessage, Throwable throwable) {
+		add(LogBuilder.EXCEPTION_REASON, exceptionMessage);
+		return add(LogBuilder.STACKTRACE, throwable);
+	}
+
+	/**
+	 * @methodtype mutate
+	 */
+	protected StructuredLogBuilder add(String name, Object value) {
+		if (noFields == names.length) {
+			String[] newNames = new String[noFields * 2];
+			Object[] newValues = new Object[noFields * 2];
+			System.arraycopy(names, 0, newNames, 0, noFields);
+			System.arraycopy(values, 0, newValues, 0, noFields);
+			names = newNames;
+			values = newValues;
+		}
+
+		names[noFields] = name;
+		values[noFields] = value;
+		noFields++;
+		return this;
+	}
+
+
+	// log-methods -----------------------------------------------------------------------------------------------------
+
+	/**
+	 * @methodtype command
+	 *
+	 * Formats the message and passes it to the logger.
+	 */
+	public void log() {
+		// naming the source saves the logger from walking the stack to find it
+		logger.logp(level, logger.getName(), null, toString());
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buffer = buffers.get();
+		buffer.setLength(0);
+
+		Session session = SessionManager.getThreadLocalSession();
+		buffer.append('{');
+		appendField(buffer, LogBuilder.LEVEL, messageLevel);
+		buffer.append(',');
+		appendField(buffer, LogBuilder.SESSION, LogBuilder.getSessionName(session));
+		buffer.append(',');
+		appendField(buffer, LogBuilder.CLIENT, LogBuilder.getClientName(session));
+		for (int i = 0; i < noFields; i++) {
+			buffer.append(',');
+			appendField(buffer, names[i], asString(values[i]));
+		}
+		buffer.append('}');
+
+		String result = buffer.toString();
+		if (buffer.capacity() > MAX_KEPT_BUFFER_SIZE) {
+			buffers.remove();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String asString(Object value) {
+		if (value instanceof Throwable) {
+			StringWriter sw = new StringWriter();
+			((Throwable) value).printStackTrace(new PrintWriter(sw));
+			return sw.toString();
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static void appendField(StringBuilder buffer, String name, String value) {
+		appendString(buffer, String.valueOf(name));
+		buffer.append(':');
+		appendString(buffer, value);
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Appends value as a JSON string.
+	 */
+	protected static void appendString(StringBuilder buffer, String value) {
+		buffer.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					buffer.append("\\\"");
+					break;
+				case '\\':
+					buffer.append("\\\\");
+					break;
+				case '\n':
+					buffer.append("\\n");
+					break;
+				case '\r':
+					buffer.append("\\r");
+					break;
+				case '\t':
+					buffer.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						buffer.append(String.format("\\u%04x", (int) c));
+					} else {
+						buffer.append(c);
+					}
+			}
+		}
+		buffer.append('"');
+	}
+
+}
@@ -21,6 +21,7 @@
 package org.wahlzeit.services;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
@@ -29,6 +30,36 @@ import java.util.logging.Logger;
 public class SysConfig extends AbstractConfig {
 
 	public static String DATA_PATH = "org-wahlzeit-dirkriehle";
+
+	/**
+	 * File with the tunable settings, relative to the config directory
+	 */
+	public static final String SETTINGS_FILE_NAME = "SysConfig.properties";
+
+	/**
+	 * Keys of tunable settings; defaults are set in the constructor and overridden by SETTINGS_FILE_NAME or setValue()
+	 */
+	public static final String PHOTO_CACHE_CAPACITY = "photoCacheCapacity";
+	public static final String LAZY_IMAGE_LOADING = "lazyImageLoading";
+	public static final String IMAGE_CACHE_CAPACITY = "imageCacheCapacity";
+	public static final String IMAGE_STORAGE = "imageStorage";
+	public static final String MAX_UPLOAD_SIZE = "maxUploadSize";
+	public static final String IMAGE_SCALER = "imageScaler";
+	public static final String ASYNC_RENDITIONS = "asyncRenditions";
+	public static final String ENCODED_RENDERING = "encodedRendering";
+	public static final String TEMPLATE_RELOADING = "templateReloading";
+
+	/**
+	 * Values of IMAGE_STORAGE
+	 */
+	public static final String DATASTORE_IMAGE_STORAGE = "datastore";
+	public static final String FILE_SYSTEM_IMAGE_STORAGE = "filesystem";
+
+	/**
+	 * Values of IMAGE_SCALER
+	 */
+	public static final String APP_ENGINE_IMAGE_SCALER = "appengine";
+	public static final String LOCAL_IMAGE_SCALER = "local";
 	
 	/**
 	 *
@@ -78,6 +109,39 @@ public class SysConfig extends AbstractConfig {
 		photosDir = new Directory(rootDir, DATA_PATH + File.separator + "photos");
 		backupDir = new Directory(rootDir, DATA_PATH + File.separator + "backup");
 		tempDir = new Directory(rootDir, DATA_PATH + File.separator + "temp");
+
+		// Tunable settings
+		doSetValue(PHOTO_CACHE_CAPACITY, "2000");
+		doSetValue(LAZY_IMAGE_LOADING, "true");
+		doSetValue(IMAGE_CACHE_CAPACITY, String.valueOf(32 * 1024 * 1024));
+		doSetValue(IMAGE_STORAGE, DATASTORE_IMAGE_STORAGE);
+		doSetValue(MAX_UPLOAD_SIZE, String.valueOf(10 * 1024 * 1024));
+		doSetValue(IMAGE_SCALER, APP_ENGINE_IMAGE_SCALER);
+		doSetValue(ASYNC_RENDITIONS, "true");
+		doSetValue(ENCODED_RENDERING, "true");
+		doSetValue(TEMPLATE_RELOADING, "false");
+		loadSettings();
+	}
+
+	/**
+	 * Overrides the defaults of the tunable settings with those of the settings file, if there is one.
+	 *
+	 * @methodtype initialization
+	 */
+	protected void loadSettings() {
+		File settingsFile = new File(rootDir + File.separator + "config" + File.separator + SETTINGS_FILE_NAME);
+		if (!settingsFile.isFile()) {
+			return;
+		}
+
+		try {
+			loadProperties(settingsFile);
+			log.config(LogBuilder.createSystemMessage().addAction("load settings")
+					.addParameter("file", settingsFile.getPath()).toString());
+		} catch (IOException ex) {
+			log.warning(LogBuilder.createSystemMessage().addAction("load settings")
+					.addParameter("file", settingsFile.getPath()).addException("using defaults", ex).toString());
+		}
 	}
 
 	/**
@@ -169,4 +233,102 @@ public class SysConfig extends AbstractConfig {
 		return getInstance().tempDir;
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	public static int getPhotoCacheCapacity() {
+		return getInstance().getIntValue(PHOTO_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Images are loaded on first access instead of at startup if true
+	 *
+	 * @methodtype boolean-query
+	 */
+	public static boolean isLazyImageLoading() {
+		return getInstance().getBooleanValue(LAZY_IMAGE_LOADING);
+	}
+
+	/**
+	 * Capacity of the image cache in bytes
+	 *
+	 * @methodtype get
+	 */
+	public static long getImageCacheCapacity() {
+		return getInstance().getIntValue(IMAGE_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Kind of image storage to use, either DATASTORE_IMAGE_STORAGE or FILE_SYSTEM_IMAGE_STORAGE
+	 *
+	 * @methodtype get
+	 */
+	public static String getImageStorage() {
+		return getInstance().getValue(IMAGE_STORAGE).trim();
+	}
+
+	/**
+	 * Engine that scales uploaded images, either APP_ENGINE_IMAGE_SCALER or LOCAL_IMAGE_SCALER
+	 *
+	 * @methodtype get
+	 */
+	public static String getImageScaler() {
+		return getInstance().getValue(IMAGE_SCALER).trim();
+	}
+
+	/**
+	 * Images of uploaded photos are created in the background if true
+	 *
+	 * @methodtype boolean-query
+	 */
+	public static boolean isAsyncRenditions() {
+		return getInstance().getBooleanValue(ASYNC_RENDITIONS);
+	}
+
+	/**
+	 * Pages are written as pre-encoded UTF-8 to the response stream if true, and through the response writer if false
+	 *
+	 * @methodtype boolean-query
+	 */
+	public static boolean isEncodedRendering() {
+		return getInstance().getBooleanValue(ENCODED_RENDERING);
+	}
+
+	/**
+	 * Templates are reloaded when their files change if true
+	 *
+	 * @methodtype boolean-query
+	 */
+	public static boolean isTemplateReloading() {
+		return getInstance().getBooleanValue(TEMPLATE_RELOADING);
+	}
+
+	/**
+	 * Maximum size of an uploaded image file in bytes
+	 *
+	 * @methodtype get
+	 */
+	public static int getMaxUploadSize() {
+		return getInstance().getIntValue(MAX_UPLOAD_SIZE);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected boolean getBooleanValue(String key) {
+		return Boolean.parseBoolean(getValue(key).trim());
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected int getIntValue(String key) {
+		String value = getValue(key);
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("value of " + key + " is not an integer: " + value, ex);
+		}
+	}
+
 }
@@ -0,0 +1,162 @@
+package org.wahlzeit.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A UnitOfWork collects the objects that ObjectManagers write on the current thread and saves them in batches, instead
+ * of one datastore round-trip per object. An object written several times is saved once, with its latest state, at the
+ * position of its first write. Batches are saved one after the other, so that the writes of an entity reach the
+ * datastore in order; the dependents of an object are only updated once its batch has been saved.
+ *
+ * Units of work nest; the outermost end() saves everything. Objects are told apart by identity, as the managers keep
+ * one instance per entity.
+ */
+public class UnitOfWork {
+
+	/**
+	 * Most entities the datastore accepts in one batch
+	 */
+	public static final int MAX_BATCH_SIZE = 500;
+
+	/**
+	 *
+	 */
+	protected static final ThreadLocal<UnitOfWork> current = new ThreadLocal<UnitOfWork>();
+
+	private static final Logger log = Logger.getLogger(UnitOfWork.class.getName());
+
+	/**
+	 * Pending objects and the managers that wrote them, in order of their first write
+	 */
+	protected Map<Persistent, ObjectManager> pending = new LinkedHashMap<Persistent, ObjectManager>();
+
+	/**
+	 *
+	 */
+	protected int depth = 0;
+
+	/**
+	 *
+	 */
+	protected UnitOfWork() {
+		// do nothing
+	}
+
+	/**
+	 * Starts a unit of work on the current thread, or joins the one that is active.
+	 *
+	 * @methodtype command
+	 */
+	public static void begin() {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork == null) {
+			unitOfWork = new UnitOfWork();
+			current.set(unitOfWork);
+		}
+		unitOfWork.depth++;
+	}
+
+	/**
+	 * Ends the unit of work begun last; the outermost one saves all pending objects.
+	 *
+	 * @methodtype command
+	 */
+	public static void end() {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork == null) {
+			throw new IllegalStateException("no unit of work to end");
+		}
+
+		if (--unitOfWork.depth == 0) {
+			try {
+				unitOfWork.flush();
+			} finally {
+				current.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the active unit of work of the current thread, or null if there is none
+	 */
+	public static UnitOfWork getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public static boolean isActive() {
+		return current.get() != null;
+	}
+
+	/**
+	 * Saves what the active unit of work of the current thread holds, e.g. before other requests are asked to read
+	 * it; does nothing if there is no unit of work.
+	 *
+	 * @methodtype command
+	 */
+	public static void flushCurrent() {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork != null) {
+			unitOfWork.flush();
+		}
+	}
+
+	/**
+	 * Remembers object to be saved; saves a batch once enough objects are pending.
+	 */
+	protected void add(ObjectManager manager, Persistent object) {
+		pending.put(object, manager);
+		if (pending.size() >= MAX_BATCH_SIZE) {
+			flush();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPendingObjects() {
+		return pending.size();
+	}
+
+	/**
+	 * Saves all pending objects, including the ones their dependents write meanwhile. If a batch can not be saved,
+	 * its objects are pending again, ahead of all others, and the exception is passed on.
+	 *
+	 * @methodtype command
+	 */
+	public void flush() {
+		while (!pending.isEmpty()) {
+			Map<Persistent, ObjectManager> batch = new LinkedHashMap<Persistent, ObjectManager>();
+			for (Iterator<Map.Entry<Persistent, ObjectManager>> i = pending.entrySet().iterator();
+				 i.hasNext() && batch.size() < MAX_BATCH_SIZE; ) {
+				Map.Entry<Persistent, ObjectManager> entry = i.next();
+				batch.put(entry.getKey(), entry.getValue());
+				i.remove();
+			}
+
+			StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+					addAction("Datastore: save batch").
+					addParameter("objects", batch.size()).log();
+			try {
+				OfyService.ofy().save().entities(batch.keySet()).now();
+			} catch (RuntimeException ex) {
+				batch.putAll(pending);
+				pending = batch;
+				throw ex;
+			}
+
+			// as in ObjectManager.writeObject, dependents still see what has changed
+			for (Map.Entry<Persistent, ObjectManager> entry : batch.entrySet()) {
+				entry.getValue().updateDependents(entry.getKey());
+				entry.getKey().resetWriteCount();
+			}
+		}
+	}
+
+}
@@ -25,7 +25,9 @@ import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.Session;
 import org.wahlzeit.services.SessionManager;
+import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.EncodedOutput;
 import org.wahlzeit.webparts.WebPart;
 
 import javax.servlet.ServletException;
@@ -47,6 +49,10 @@ public abstract class AbstractServlet extends HttpServlet {
 
 	private static final Logger log = Logger.getLogger(AbstractServlet.class.getName());
 	private static final long serialVersionUID = 42L; // any does; class never serialized
+	/**
+	 * Pages are UTF-8, as declared by the templates
+	 */
+	protected static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
 	/**
 	 *
 	 */
@@ -183,11 +189,17 @@ public abstract class AbstractServlet extends HttpServlet {
 		log.config(LogBuilder.createSystemMessage().
 				addParameter("proctime", String.valueOf(processingTime)).toString());
 
-		response.setContentType("text/html");
+		response.setContentType(HTML_CONTENT_TYPE);
 
-		PrintWriter out = response.getWriter();
-		result.writeOn(out);
-		out.close();
+		if (SysConfig.isEncodedRendering()) {
+			EncodedOutput out = new EncodedOutput(response.getOutputStream());
+			result.writeOn(out);
+			out.close();
+		} else {
+			PrintWriter out = response.getWriter();
+			result.writeOn(out);
+			out.close();
+		}
 
 		response.setStatus(HttpServletResponse.SC_OK);
 	}
@@ -26,6 +26,8 @@ import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.common.io.CharStreams;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.wahlzeit.handlers.PartUtil;
 import org.wahlzeit.handlers.WebFormHandler;
@@ -35,15 +37,16 @@ import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SessionManager;
+import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.webparts.WebPart;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -60,6 +63,16 @@ public class MainServlet extends AbstractServlet {
 	 */
 	private static final long serialVersionUID = 42L; // any one does; class never serialized
 
+	/**
+	 * Allowance for the form fields and multipart headers that come along with an uploaded file
+	 */
+	protected static final int MAX_FORM_FIELDS_SIZE = 64 * 1024;
+
+	/**
+	 * Used if the request does not tell its content length
+	 */
+	protected static final int INITIAL_UPLOAD_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 *
 	 */
@@ -152,8 +165,11 @@ public class MainServlet extends AbstractServlet {
 			ServletException {
 		Map<String, String> result = new HashMap<String, String>();
 		result.putAll(request.getParameterMap());
+		int maxUploadSize = SysConfig.getMaxUploadSize();
 		try {
 			ServletFileUpload upload = new ServletFileUpload();
+			// rejects requests that announce a larger content length before reading anything
+			upload.setSizeMax((long) maxUploadSize + MAX_FORM_FIELDS_SIZE);
 			FileItemIterator iterator = upload.getItemIterator(request);
 
 			while (iterator.hasNext()) {
@@ -162,7 +178,7 @@ public class MainServlet extends AbstractServlet {
 
 				if (!fileItemStream.isFormField()) {
 					InputStream inputStream = fileItemStream.openStream();
-					Image image = getImage(inputStream);
+					Image image = getImage(inputStream, request.getContentLength(), maxUploadSize);
 					User user = (User) us.getClient();
 					user.setUploadedImage(image);
 					result.put("fileName", filename);
@@ -177,6 +193,11 @@ public class MainServlet extends AbstractServlet {
 							addParameter("value", value).toString());
 				}
 			}
+		} catch (FileUploadException ex) {
+			rejectUploadedImage(us, ex);
+		} catch (FileUploadBase.FileUploadIOException ex) {
+			// a request without content length exceeded the size limit while it was read
+			rejectUploadedImage(us, ex);
 		} catch (Exception ex) {
 			throw new ServletException(ex);
 		}
@@ -184,23 +205,50 @@ public class MainServlet extends AbstractServlet {
 		return result;
 	}
 
+	/**
+	 * Drops a previously uploaded image, so that the upload is reported as too large.
+	 */
+	protected void rejectUploadedImage(UserSession us, Exception ex) {
+		log.warning(LogBuilder.createSystemMessage().addException("Rejected uploaded image", ex).toString());
+		if (us.getClient() instanceof User) {
+			((User) us.getClient()).setUploadedImage(null);
+		}
+	}
+
 	/**
 	 * Create an Image object from the Input stream.
 	 */
-	private Image getImage(InputStream input) throws IOException {
-		Image image;
+	private Image getImage(InputStream input, long sizeHint, int maxSize) throws IOException, FileUploadException {
 		try {
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			byte[] buffer = new byte[1024 * 1024];
-			int bytesRead = input.read(buffer);
-			while (bytesRead != -1) {
-				outputStream.write(buffer, 0, bytesRead);
-				bytesRead = input.read(buffer);
-			}
-			image = ImagesServiceFactory.makeImage(outputStream.toByteArray());
+			return ImagesServiceFactory.makeImage(readFully(input, sizeHint, maxSize));
 		} finally {
 			input.close();
 		}
-		return image;
+	}
+
+	/**
+	 * Reads the input into a single buffer and fails as soon as more than maxSize bytes arrive. The buffer is sized
+	 * by the size hint, e.g. the content length of the request, so it usually does not have to grow; it is trimmed to
+	 * the actual number of bytes at most once.
+	 */
+	protected static byte[] readFully(InputStream input, long sizeHint, int maxSize)
+			throws IOException, FileUploadException {
+		long initialSize = sizeHint > 0 ? sizeHint : INITIAL_UPLOAD_BUFFER_SIZE;
+		byte[] buffer = new byte[(int) Math.min(initialSize, (long) maxSize + 1)];
+		int noBytes = 0;
+		while (true) {
+			if (noBytes == buffer.length) {
+				buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, (long) maxSize + 1));
+			}
+			int bytesRead = input.read(buffer, noBytes, buffer.length - noBytes);
+			if (bytesRead == -1) {
+				break;
+			}
+			noBytes += bytesRead;
+			if (noBytes > maxSize) {
+				throw new FileUploadException("uploaded file exceeds the maximum size of " + maxSize + " bytes");
+			}
+		}
+		return noBytes == buffer.length ? buffer : Arrays.copyOf(buffer, noBytes);
 	}
 }
@@ -5,13 +5,22 @@ import org.apache.http.HttpStatus;
 import org.wahlzeit.model.FishPhotoManager;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.model.persistence.ImageCache;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.utils.ByteRange;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +35,12 @@ public class StaticDataServlet extends AbstractServlet {
 
 	Logger log = Logger.getLogger(StaticDataServlet.class.getName());
 
+	/**
+	 * Versioned image URLs never change their content, so they may be cached for a year
+	 */
+	public static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+	public static final String REVALIDATE_CACHE_CONTROL = "public, max-age=0, must-revalidate";
+
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		try {
@@ -40,15 +55,21 @@ public class StaticDataServlet extends AbstractServlet {
 					addParameter("size", size).toString());
 
 			if ("image".equals(type)) {
-				Image image = getImage(photoId, size);
-				if (image != null) {
-					response.getOutputStream().write(image.getImageData());
-					response.getOutputStream().flush();
-					response.setStatus(HttpStatus.SC_OK);
-				} else {
-					log.warning(LogBuilder.createSystemMessage().addMessage("image not found").toString());
+				Photo photo = getPhoto(photoId);
+				if (photo == null) {
+					log.warning(LogBuilder.createSystemMessage().addMessage("unknown photo requested").toString());
 					response.setStatus(HttpStatus.SC_NOT_FOUND);
+					return;
+				}
+
+				PhotoSize photoSize = PhotoSize.getFromInt(size);
+				setCacheHeaders(request, response, photo, photoSize);
+				if (isNotModified(request, photo, photoSize)) {
+					response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+					return;
 				}
+
+				writeImage(request, response, photo, photoSize);
 			} else {
 				log.warning(LogBuilder.createSystemMessage().
 						addMessage("unimplemented static resource type has been requested").toString());
@@ -60,32 +81,312 @@ public class StaticDataServlet extends AbstractServlet {
 		}
 	}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the photo of the given id, or null if there is none. Only the exact string form of a photo id is
+	 * accepted, so no other image, e.g. an original, can be requested via the id of a photo.
+	 */
+	protected static Photo getPhoto(String photoId) {
+		if (photoId == null) {
+			return null;
+		}
+		Photo result = FishPhotoManager.getInstance().getPhoto(photoId);
+		return (result != null && photoId.equals(result.getId().asString())) ? result : null;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sets content type and cache validators. The photo records when its images were last written, so that time
+	 * serves as modification time.
+	 */
+	private void setCacheHeaders(HttpServletRequest request, HttpServletResponse response, Photo photo,
+								 PhotoSize photoSize) {
+		String contentType = getContentType(photo);
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+
+		String eTag = getETag(photo, photoSize);
+		if (eTag != null) {
+			response.setHeader("ETag", eTag);
+		}
+		response.setDateHeader("Last-Modified", photo.getImageModificationTime());
+
+		String version = photo.getImageVersion(photoSize);
+		if (version != null && version.equals(request.getParameter(Photo.IMAGE_VERSION))) {
+			response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+		} else {
+			response.setHeader("Cache-Control", REVALIDATE_CACHE_CONTROL);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static String getETag(Photo photo, PhotoSize photoSize) {
+		String version = photo.getImageVersion(photoSize);
+		if (version == null) {
+			return null;
+		}
+		return "\"" + photo.getId().asString() + "-" + photoSize.asInt() + "-" + version + "\"";
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * Evaluates the conditional request headers against the photo only, so no image has to be loaded. If-None-Match
+	 * takes precedence over If-Modified-Since.
+	 */
+	protected static boolean isNotModified(HttpServletRequest request, Photo photo, PhotoSize photoSize) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			String eTag = getETag(photo, photoSize);
+			if (eTag == null) {
+				return false;
+			}
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/")) {
+					candidate = candidate.substring(2);
+				}
+				if (candidate.equals("*") || candidate.equals(eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		// HTTP dates have a resolution of seconds
+		return ifModifiedSince >= 0 && photo.getImageModificationTime() / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * A Range header only applies if the If-Range header, if any, still matches the image.
+	 */
+	protected static boolean isRangeApplicable(HttpServletRequest request, Photo photo, PhotoSize photoSize) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			// weak validators never match for ranges
+			return ifRange.equals(getETag(photo, photoSize));
+		}
+
+		long date;
+		try {
+			date = request.getDateHeader("If-Range");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return date >= 0 && photo.getImageModificationTime() / 1000 == date / 1000;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes the whole image or the requested byte ranges of it. The image data is taken from memory if it is at
+	 * hand, and streamed from the image storage in bounded buffers otherwise.
+	 */
+	private void writeImage(HttpServletRequest request, HttpServletResponse response, Photo photo,
+							PhotoSize photoSize) throws IOException {
+		ImageSource source = getImageSource(photo, photoSize);
+		if (source == null) {
+			log.warning(LogBuilder.createSystemMessage().addMessage("image not found").toString());
+			response.setStatus(HttpStatus.SC_NOT_FOUND);
+			return;
+		}
+
+		long length = source.getLength();
+		response.setHeader("Accept-Ranges", ByteRange.BYTES_UNIT);
+		List<ByteRange> ranges = null;
+		if (isRangeApplicable(request, photo, photoSize)) {
+			ranges = ByteRange.parse(request.getHeader("Range"), length);
+		}
+
+		if (ranges == null) {
+			response.setStatus(HttpStatus.SC_OK);
+			response.setHeader("Content-Length", String.valueOf(length));
+			source.transferTo(0, length, Channels.newChannel(response.getOutputStream()));
+		} else if (ranges.isEmpty()) {
+			response.setStatus(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", ByteRange.BYTES_UNIT + " */" + length);
+			return;
+		} else if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			response.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", range.asContentRange(length));
+			response.setHeader("Content-Length", String.valueOf(range.getLength()));
+			source.transferTo(range.getFirst(), range.getLength(), Channels.newChannel(response.getOutputStream()));
+		} else {
+			writeRanges(response, getContentType(photo), source, length, ranges);
+		}
+		response.getOutputStream().flush();
+	}
+
 	/**
 	 * @methodtype command
 	 *
-	 * Loads image either from the <@link>PhotoManager</@link> or from the <@link>ImageStorage</@link>. If image does
-	 * not exist, null is returned.
+	 * Writes several ranges as multipart/byteranges response; the length of the body is computed in advance.
 	 */
-	private Image getImage(String photoId, int size) {
-		Image image = null;
-		Photo photo = FishPhotoManager.getInstance().getPhoto(photoId);
-		if (photo != null) {
-			PhotoSize photoSize = PhotoSize.getFromInt(size);
-			image = photo.getImage(photoSize);
-		}
-		// if not in cache load from Google Cloud Storage
+	private void writeRanges(HttpServletResponse response, String contentType, ImageSource source, long length,
+							 List<ByteRange> ranges) throws IOException {
+		String boundary = "wahlzeit-" + UUID.randomUUID().toString();
+		List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+		long contentLength = 0;
+		for (ByteRange range : ranges) {
+			StringBuilder partHeader = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+			if (contentType != null) {
+				partHeader.append("Content-Type: ").append(contentType).append("\r\n");
+			}
+			partHeader.append("Content-Range: ").append(range.asContentRange(length)).append("\r\n\r\n");
+			byte[] partHeaderBytes = partHeader.toString().getBytes(StandardCharsets.US_ASCII);
+			partHeaders.add(partHeaderBytes);
+			contentLength += partHeaderBytes.length + range.getLength();
+		}
+		byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+		contentLength += trailer.length;
+
+		response.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setHeader("Content-Length", String.valueOf(contentLength));
+
+		OutputStream output = response.getOutputStream();
+		WritableByteChannel channel = Channels.newChannel(output);
+		for (int i = 0; i < ranges.size(); i++) {
+			output.write(partHeaders.get(i));
+			source.transferTo(ranges.get(i).getFirst(), ranges.get(i).getLength(), channel);
+		}
+		output.write(trailer);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns a source for the image, or null if it does not exist. Images held in memory are used directly, small
+	 * ones are read via the <@link>ImageCache</@link>, and all others are streamed from the
+	 * <@link>ImageStorage</@link>. The length of the image is taken from the photo, so a small image is read only
+	 * once; if the length is unknown and the storage does not prefer streaming, the image is read as a whole.
+	 */
+	private ImageSource getImageSource(Photo photo, PhotoSize photoSize) throws IOException {
+		String photoId = photo.getId().asString();
+		Image image = photo.getLoadedImage(photoSize);
 		if (image == null) {
-			Serializable rawImage = null;
-			try {
-				rawImage = ImageStorage.getInstance().readImage(photoId, size);
-			} catch (IOException e) {
-				log.warning(LogBuilder.createSystemMessage().addException("Problem when reading image.", e).toString());
+			image = ImageCache.getInstance().getCachedImage(photoId, photoSize);
+		}
+		if (image != null) {
+			return new MemoryImageSource(image.getImageData());
+		}
+
+		if (photo.hasImageManifest() && !photo.hasStoredImage(photoSize)) {
+			return null;
+		}
+
+		ImageStorage imageStorage = ImageStorage.getInstance();
+		long length = photo.getImageLength(photoSize);
+		if (length < 0 && !imageStorage.isStreamingPreferred()) {
+			image = ImageCache.getInstance().getImage(photoId, photoSize);
+			return (image != null) ? new MemoryImageSource(image.getImageData()) : null;
+		} else if (length < 0) {
+			length = imageStorage.getImageLength(photoId, photoSize.asInt());
+			if (length < 0) {
+				return null;
 			}
-			if (rawImage != null && rawImage instanceof Image) {
-				image = (Image) rawImage;
+		}
+
+		if (!imageStorage.isStreamingPreferred() && ImageCache.getInstance().isCacheable(length)) {
+			image = ImageCache.getInstance().getImage(photoId, photoSize);
+			return (image != null) ? new MemoryImageSource(image.getImageData()) : null;
+		}
+		return new StorageImageSource(photoId, photoSize.asInt(), length);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	private String getContentType(Photo photo) {
+		if (getServletContext() == null) {
+			return null;
+		}
+		return getServletContext().getMimeType("image." + photo.getEnding());
+	}
+
+	/**
+	 * Source of the image data that is written to the response.
+	 */
+	private interface ImageSource {
+
+		/**
+		 * @methodtype get
+		 */
+		long getLength();
+
+		/**
+		 * @methodtype command
+		 */
+		void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+	}
+
+	/**
+	 * Image data that is already in memory.
+	 */
+	private static class MemoryImageSource implements ImageSource {
+
+		private final byte[] data;
+
+		MemoryImageSource(byte[] myData) {
+			data = myData;
+		}
+
+		@Override
+		public long getLength() {
+			return data.length;
+		}
+
+		@Override
+		public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(data, (int) position, (int) count);
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
 			}
 		}
-		return image;
 	}
-}
 
+	/**
+	 * Image data that is streamed from the image storage.
+	 */
+	private static class StorageImageSource implements ImageSource {
+
+		private final String photoId;
+		private final int size;
+		private final long length;
+
+		StorageImageSource(String myPhotoId, int mySize, long myLength) {
+			photoId = myPhotoId;
+			size = mySize;
+			length = myLength;
+		}
+
+		@Override
+		public long getLength() {
+			return length;
+		}
+
+		@Override
+		public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			ImageStorage.getInstance().transferImageTo(photoId, size, position, count, target);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.wahlzeit.services.StructuredLogBuilder;
+import org.wahlzeit.services.UnitOfWork;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a request in a UnitOfWork, so that all objects it writes are saved in batches. The objects are saved before
+ * the response can be committed, so a client never sees a page or follows a redirect before the writes it depends
+ * on are done; whatever is written later is saved when the request ends. If that fails once the response is
+ * committed, or after the request failed already, it is only logged.
+ * Has to be mapped inside the ObjectifyFilter.
+ */
+public class UnitOfWorkFilter implements Filter {
+
+	private static final Logger log = Logger.getLogger(UnitOfWorkFilter.class.getName());
+
+	/**
+	 *
+	 */
+	public void init(FilterConfig filterConfig) throws ServletException {
+		// do nothing
+	}
+
+	/**
+	 *
+	 */
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		UnitOfWork.begin();
+		boolean isCompleted = false;
+		try {
+			if (response instanceof HttpServletResponse) {
+				response = new FlushingResponse((HttpServletResponse) response);
+			}
+			chain.doFilter(request, response);
+			isCompleted = true;
+		} finally {
+			endUnitOfWork(response, isCompleted);
+		}
+	}
+
+	/**
+	 * Passes on a failed save only while it can still become the response of the request.
+	 */
+	protected void endUnitOfWork(ServletResponse response, boolean isCompleted) {
+		try {
+			UnitOfWork.end();
+		} catch (RuntimeException ex) {
+			if (isCompleted && !response.isCommitted()) {
+				throw ex;
+			}
+			StructuredLogBuilder.createSystemMessage(log, Level.SEVERE).
+					addException("Could not save objects at the end of the request", ex).log();
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void destroy() {
+		// do nothing
+	}
+
+	/**
+	 * Saves the pending objects of the unit of work before anything can be sent to the client.
+	 */
+	protected static class FlushingResponse extends HttpServletResponseWrapper {
+
+		/**
+		 *
+		 */
+		public FlushingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			UnitOfWork.flushCurrent();
+			return super.getOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			UnitOfWork.flushCurrent();
+			return super.getWriter();
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			UnitOfWork.flushCurrent();
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			UnitOfWork.flushCurrent();
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			UnitOfWork.flushCurrent();
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			UnitOfWork.flushCurrent();
+			super.flushBuffer();
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a resource of known length, as requested by an HTTP Range header. First and last byte
+ * positions are inclusive.
+ */
+public class ByteRange {
+
+	/**
+	 *
+	 */
+	public static final String BYTES_UNIT = "bytes";
+
+	/**
+	 * Requests with more ranges are served as a whole, as they are more likely abuse than a resuming client
+	 */
+	public static final int MAX_NO_RANGES = 16;
+
+	/**
+	 *
+	 */
+	protected final long first;
+	protected final long last;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public ByteRange(long myFirst, long myLast) {
+		if (myFirst < 0 || myLast < myFirst) {
+			throw new IllegalArgumentException("invalid byte range: " + myFirst + "-" + myLast);
+		}
+		first = myFirst;
+		last = myLast;
+	}
+
+	/**
+	 * Parses the value of a Range header for a resource of the given length. Returns null if the header is missing
+	 * or can not be used, so the whole resource is to be sent; returns an empty list if none of the ranges is
+	 * satisfiable.
+	 *
+	 * @methodtype conversion
+	 */
+	public static List<ByteRange> parse(String header, long length) {
+		if (header == null || !header.trim().startsWith(BYTES_UNIT + "=")) {
+			return null;
+		}
+
+		String[] specs = header.trim().substring(BYTES_UNIT.length() + 1).split(",");
+		if (specs.length > MAX_NO_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> result = new ArrayList<ByteRange>(specs.length);
+		for (String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+
+			long first;
+			long last;
+			try {
+				String firstString = spec.substring(0, dash).trim();
+				String lastString = spec.substring(dash + 1).trim();
+				if (firstString.isEmpty()) {
+					// suffix range: the last n bytes
+					long suffixLength = Long.parseLong(lastString);
+					if (suffixLength < 0) {
+						return null;
+					}
+					first = Math.max(length - suffixLength, 0);
+					last = length - 1;
+					if (suffixLength == 0) {
+						continue;
+					}
+				} else {
+					first = Long.parseLong(firstString);
+					last = lastString.isEmpty() ? length - 1 : Math.min(Long.parseLong(lastString), length - 1);
+					if (first < 0 || (!lastString.isEmpty() && Long.parseLong(lastString) < first)) {
+						return null;
+					}
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+
+			if (first < length) {
+				result.add(new ByteRange(first, last));
+			}
+		}
+
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Returns the value of the Content-Range header for this range.
+	 *
+	 * @methodtype conversion
+	 */
+	public String asContentRange(long totalLength) {
+		return BYTES_UNIT + " " + first + "-" + last + "/" + totalLength;
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ByteRange)) {
+			return false;
+		}
+		ByteRange range = (ByteRange) other;
+		return first == range.first && last == range.last;
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (first * 31 + last);
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An EncodedOutput writes UTF-8 to an OutputStream.
+ * Bytes that have been encoded before, like the literal segments of templates, are passed on as they are;
+ * only strings get encoded, using one encoder and one buffer for all of them.
+ */
+public class EncodedOutput {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 *
+	 */
+	protected OutputStream out;
+
+	/**
+	 *
+	 */
+	protected CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().
+			onMalformedInput(CodingErrorAction.REPLACE).
+			onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 *
+	 */
+	protected ByteBuffer buffer;
+
+	/**
+	 *
+	 */
+	public EncodedOutput(OutputStream myOut) {
+		this(myOut, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 *
+	 */
+	public EncodedOutput(OutputStream myOut, int bufferSize) {
+		out = myOut;
+		buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public static byte[] encode(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes bytes that are UTF-8 already
+	 */
+	public void write(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.remaining()) {
+			flushBuffer();
+			if (bytes.length > buffer.capacity()) {
+				out.write(bytes);
+				return;
+			}
+		}
+		buffer.put(bytes);
+	}
+
+	/**
+	 *
+	 */
+	public void write(String value) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(value);
+		encoder.reset();
+		while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+			flushBuffer();
+		}
+		while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 *
+	 */
+	public void close() throws IOException {
+		flushBuffer();
+		out.close();
+	}
+
+	/**
+	 *
+	 */
+	protected void flushBuffer() throws IOException {
+		if (buffer.position() > 0) {
+			out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+	}
+
+}
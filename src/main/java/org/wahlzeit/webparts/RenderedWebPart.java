@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * A RenderedWebPart is the fixed output of a Writable, kept both as text and as UTF-8.
+ * It is read-only and can be written by many requests at the same time.
+ */
+public class RenderedWebPart implements Writable {
+
+	/**
+	 *
+	 */
+	protected final String text;
+	protected final byte[] bytes;
+
+	/**
+	 *
+	 */
+	public RenderedWebPart(String myText) {
+		text = myText;
+		bytes = EncodedOutput.encode(myText);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static RenderedWebPart render(Writable part) {
+		StringWriter out = new StringWriter();
+		try {
+			part.writeOn(out);
+		} catch (IOException ioex) {
+			throw new IllegalStateException("StringWriter failed", ioex);
+		}
+		return new RenderedWebPart(out.toString());
+	}
+
+	/**
+	 *
+	 */
+	public String asString() {
+		return text;
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(Writer out) throws IOException {
+		out.write(text);
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(EncodedOutput out) throws IOException {
+		out.write(bytes);
+	}
+
+}
@@ -41,19 +41,42 @@ public class WebPart implements Writable {
 	protected WebPartTemplate template = null;
 
 	/**
-	 *
+	 * Values by key index of the template; a slot holds either a string or a writable
+	 */
+	protected String[] strings;
+	protected Writable[] writables;
+
+	/**
+	 * Values for keys the template has no slot for; created on demand
 	 */
-	protected Map<String, Object> parts = new HashMap<String, Object>();
+	protected Map<String, Object> otherParts = null;
 
 	/**
 	 *
 	 */
 	public WebPart(WebPartTemplate myTemplate) {
 		template = myTemplate;
+		strings = new String[template.getNoKeys()];
+		writables = new Writable[template.getNoKeys()];
+	}
+
+	/**
+	 *
+	 */
+	public WebPartTemplate getTemplate() {
+		return template;
 	}
 
+	/**
+	 *
+	 */
 	public Object getValue(String key) {
-		return parts.get(key);
+		int index = template.getKeyIndex(key);
+		if (index != -1) {
+			return (strings[index] != null) ? strings[index] : writables[index];
+		} else {
+			return (otherParts != null) ? otherParts.get(key) : null;
+		}
 	}
 
 	/**
@@ -169,8 +192,22 @@ public class WebPart implements Writable {
 	 *
 	 */
 	protected void putValue(String key, Object value) {
-		if (value != null) {
-			parts.put(key, value);
+		if (value == null) {
+			return;
+		}
+
+		int index = template.getKeyIndex(key);
+		if (index == -1) {
+			if (otherParts == null) {
+				otherParts = new HashMap<String, Object>();
+			}
+			otherParts.put(key, value);
+		} else if (value instanceof Writable) {
+			strings[index] = null;
+			writables[index] = (Writable) value;
+		} else {
+			strings[index] = value.toString();
+			writables[index] = null;
 		}
 	}
 
@@ -178,33 +215,38 @@ public class WebPart implements Writable {
 	 *
 	 */
 	public void writeOn(Writer out) throws IOException {
-		String tmpl = template.asString();
-		String[] keys = template.getKeys();
-		int[] slots = template.getSlots();
-
-		int start = 0;
-		for (int i = 0; i < keys.length; i++) {
-			int index = slots[i];
-			out.write(tmpl, start, index - start);
-
-			String key = keys[i];
-			if (key != null) {
-				Object object = parts.get(key);
-				if (object != null) {
-					if (object instanceof Writable) {
-						Writable part = (Writable) object;
-						part.writeOn(out);
-					} else {
-						String value = object.toString();
-						out.write(value);
-					}
-				}
+		int noSlots = template.getNoSlots();
+		for (int i = 0; i < noSlots; i++) {
+			out.write(template.getSegment(i));
+
+			int index = template.getSlot(i);
+			if (strings[index] != null) {
+				out.write(strings[index]);
+			} else if (writables[index] != null) {
+				writables[index].writeOn(out);
 			}
+		}
 
-			start = index;
+		out.write(template.getSegment(noSlots));
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(EncodedOutput out) throws IOException {
+		int noSlots = template.getNoSlots();
+		for (int i = 0; i < noSlots; i++) {
+			out.write(template.getEncodedSegment(i));
+
+			int index = template.getSlot(i);
+			if (strings[index] != null) {
+				out.write(strings[index]);
+			} else if (writables[index] != null) {
+				writables[index].writeOn(out);
+			}
 		}
 
-		out.write(tmpl, start, tmpl.length() - start);
+		out.write(template.getEncodedSegment(noSlots));
 	}
 
 }
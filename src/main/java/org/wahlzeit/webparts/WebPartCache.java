@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The WebPartCache keeps rendered WebParts that many requests share.
+ * A fragment is cached under the name of its template, which includes the language, and the values it varies by.
+ * Callers must name every value the fragment depends on; anything else must be the same for all requests.
+ */
+public class WebPartCache {
+
+	/**
+	 * Bounds the fragments per template, in case callers vary by too many values
+	 */
+	public static final int MAX_FRAGMENTS_PER_TEMPLATE = 256;
+
+	/**
+	 *
+	 */
+	protected static final char KEY_SEPARATOR = '\u0000';
+
+	/**
+	 *
+	 */
+	protected static WebPartCache instance = new WebPartCache();
+
+	/**
+	 * Fragments by template name and then by varying values
+	 */
+	protected ConcurrentMap<String, ConcurrentMap<String, RenderedWebPart>> fragments =
+			new ConcurrentHashMap<String, ConcurrentMap<String, RenderedWebPart>>();
+
+	/**
+	 *
+	 */
+	protected WebPartCache() {
+		// do nothing
+	}
+
+	/**
+	 *
+	 */
+	public static WebPartCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public static void setInstance(WebPartCache webPartCache) {
+		instance = webPartCache;
+	}
+
+	/**
+	 * @return the cached fragment or null if there is none
+	 */
+	public RenderedWebPart getFragment(String templateName, String... varyingValues) {
+		ConcurrentMap<String, RenderedWebPart> templateFragments = fragments.get(templateName);
+		return (templateFragments != null) ? templateFragments.get(asKey(varyingValues)) : null;
+	}
+
+	/**
+	 * Renders part and caches the result unless another request has been quicker
+	 *
+	 * @return the fragment to use in place of part
+	 */
+	public RenderedWebPart putFragment(WebPart part, String... varyingValues) {
+		String templateName = part.getTemplate().getName();
+		RenderedWebPart result = RenderedWebPart.render(part);
+
+		ConcurrentMap<String, RenderedWebPart> templateFragments = fragments.get(templateName);
+		if (templateFragments == null) {
+			templateFragments = new ConcurrentHashMap<String, RenderedWebPart>();
+			ConcurrentMap<String, RenderedWebPart> other = fragments.putIfAbsent(templateName, templateFragments);
+			if (other != null) {
+				templateFragments = other;
+			}
+		}
+
+		if (templateFragments.size() < MAX_FRAGMENTS_PER_TEMPLATE) {
+			RenderedWebPart other = templateFragments.putIfAbsent(asKey(varyingValues), result);
+			if (other != null) {
+				result = other;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Drops all fragments of a template, e.g. after the template has changed
+	 */
+	public void invalidateTemplate(String templateName) {
+		fragments.remove(templateName);
+	}
+
+	/**
+	 * Drops the fragment of a template for the given values, e.g. after data shown by it has changed
+	 */
+	public void invalidate(String templateName, String... varyingValues) {
+		ConcurrentMap<String, RenderedWebPart> templateFragments = fragments.get(templateName);
+		if (templateFragments != null) {
+			templateFragments.remove(asKey(varyingValues));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void invalidateAll() {
+		fragments.clear();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String asKey(String... varyingValues) {
+		StringBuilder result = new StringBuilder();
+		for (String value : varyingValues) {
+			result.append(value).append(KEY_SEPARATOR);
+		}
+		return result.toString();
+	}
+
+}
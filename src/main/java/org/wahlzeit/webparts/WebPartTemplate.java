@@ -20,30 +20,56 @@
 
 package org.wahlzeit.webparts;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A WebPartTmpl is a template for a WebPart.
  * It gets initialized once and is read-only after that.
+ *
+ * Initializing a template compiles it into literal segments and slot indices: the n-th slot of the template sits
+ * between segments n and n+1 and refers to one of the template's distinct keys by index. WebParts store their values
+ * by that index, so that rendering a page needs neither hashing nor string searches.
  */
 public class WebPartTemplate {
 
 	/**
 	 *
 	 */
-	protected String name;
+	protected static final String SLOT_START = "{$";
+	protected static final String SLOT_END = "}";
 
 	/**
 	 *
 	 */
-	protected String template;
+	protected String name;
+
+	/**
+	 * Literal text between slots; there is one more segment than there are slots
+	 */
+	protected String[] segments = new String[] { "" };
+
+	/**
+	 * The segments as UTF-8, so that rendering to a stream need not encode them again
+	 */
+	protected byte[][] encodedSegments = new byte[][] { new byte[0] };
+
+	/**
+	 * Per slot, the index of its key in keys
+	 */
+	protected int[] slots = new int[0];
+
+	/**
+	 * Distinct keys of the template in order of first occurrence
+	 */
+	protected String[] keys = new String[0];
 
 	/**
 	 *
 	 */
-	protected String[] keys = null;
-	protected int[] slots = null;
+	protected Map<String, Integer> keyIndices = new HashMap<String, Integer>();
 
 	/**
 	 *
@@ -53,42 +79,53 @@ public class WebPartTemplate {
 	}
 
 	/**
+	 * Splits source into segments and slots in one pass over it.
+	 *
 	 * @methodtype initialization
 	 */
 	public void initialize(String source) {
-		List<String> keyList = new LinkedList<String>();
-		List<Integer> slotList = new LinkedList<Integer>();
-
-		StringBuffer buffer = new StringBuffer(source);
-
-		for (int index = 0; index != -1; ) {
-			int nextSlot = buffer.indexOf("{$", index);
-			if (nextSlot != -1) {
-				int endSlot = buffer.indexOf("}", nextSlot);
-				if (endSlot != -1) {
-					String key = buffer.substring(nextSlot + 2, endSlot);
-
-					keyList.add(key);
-					slotList.add(nextSlot);
-
-					buffer.replace(nextSlot, endSlot + 1, "");
-					index = nextSlot;
-				}
-				index = endSlot;
-			} else {
-				index = -1;
+		List<String> segmentList = new ArrayList<String>();
+		List<Integer> slotList = new ArrayList<Integer>();
+		List<String> keyList = new ArrayList<String>();
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+
+		int start = 0;
+		while (true) {
+			int nextSlot = source.indexOf(SLOT_START, start);
+			int endSlot = (nextSlot == -1) ? -1 : source.indexOf(SLOT_END, nextSlot);
+			if (endSlot == -1) {
+				break;
+			}
+
+			String key = source.substring(nextSlot + SLOT_START.length(), endSlot);
+			Integer index = indices.get(key);
+			if (index == null) {
+				index = keyList.size();
+				keyList.add(key);
+				indices.put(key, index);
 			}
+
+			segmentList.add(source.substring(start, nextSlot));
+			slotList.add(index);
+			start = endSlot + SLOT_END.length();
+		}
+		segmentList.add(source.substring(start));
+
+		int[] newSlots = new int[slotList.size()];
+		for (int i = 0; i < newSlots.length; i++) {
+			newSlots[i] = slotList.get(i);
 		}
 
-		int length = keyList.size();
-		keys = new String[length];
-		slots = new int[length];
-		for (int i = 0; i < length; i++) {
-			keys[i] = keyList.get(i);
-			slots[i] = slotList.get(i);
+		byte[][] newEncodedSegments = new byte[segmentList.size()][];
+		for (int i = 0; i < newEncodedSegments.length; i++) {
+			newEncodedSegments[i] = EncodedOutput.encode(segmentList.get(i));
 		}
 
-		template = buffer.toString();
+		segments = segmentList.toArray(new String[segmentList.size()]);
+		encodedSegments = newEncodedSegments;
+		slots = newSlots;
+		keys = keyList.toArray(new String[keyList.size()]);
+		keyIndices = indices;
 	}
 
 	/**
@@ -99,24 +136,64 @@ public class WebPartTemplate {
 	}
 
 	/**
-	 *
+	 * Returns the template text with all slots left empty
 	 */
 	public String asString() {
-		return template;
+		StringBuilder result = new StringBuilder();
+		for (String segment : segments) {
+			result.append(segment);
+		}
+		return result.toString();
 	}
 
 	/**
-	 *
+	 * Returns the distinct keys of the template; the key at index i is the key of slot index i
 	 */
 	public String[] getKeys() {
-		return keys; // @FIXME needs cloning?
+		return keys.clone();
+	}
+
+	/**
+	 * @return index of key in the template's keys, or -1 if the template has no such slot
+	 */
+	public int getKeyIndex(String key) {
+		Integer result = keyIndices.get(key);
+		return (result == null) ? -1 : result;
 	}
 
 	/**
 	 *
 	 */
-	public int[] getSlots() {
-		return slots; // @FIXME needs cloning?
+	public int getNoKeys() {
+		return keys.length;
+	}
+
+	/**
+	 *
+	 */
+	public int getNoSlots() {
+		return slots.length;
+	}
+
+	/**
+	 * @return key index of the n-th slot of the template
+	 */
+	public int getSlot(int n) {
+		return slots[n];
+	}
+
+	/**
+	 * @return the literal text preceding the n-th slot; segment getNoSlots() is the text after the last slot
+	 */
+	public String getSegment(int n) {
+		return segments[n];
+	}
+
+	/**
+	 * @return segment n encoded as UTF-8; callers must not modify it
+	 */
+	public byte[] getEncodedSegment(int n) {
+		return encodedSegments[n];
 	}
 
 }
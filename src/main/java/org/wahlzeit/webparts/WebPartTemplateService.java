@@ -20,6 +20,7 @@
 
 package org.wahlzeit.webparts;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 import org.wahlzeit.services.ConfigDir;
@@ -27,16 +28,48 @@ import org.wahlzeit.services.LogBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
  * The WebPartTemplateService creates WebPartTemplates upon request by reading them from disk.
  * It requires configuration with a template directory and uses the following naming convention: tmplDir/language/part-type/part-name.html
+ *
+ * All templates can be compiled up-front, and the template directory can be watched for changes. A changed template
+ * is compiled anew and then replaces the old one in one step; WebParts that are being built keep the old one.
  */
 public class WebPartTemplateService {
 
+	/**
+	 *
+	 */
+	public static final String TEMPLATE_FILE_ENDING = ".html";
+
+	/**
+	 * Upper bound of threads that compile templates at startup
+	 */
+	public static final int MAX_COMPILING_THREADS = 4;
+
 	/**
 	 *
 	 */
@@ -45,11 +78,15 @@ public class WebPartTemplateService {
 	/**
 	 *
 	 */
-	protected Map<String, WebPartTemplate> templates = new HashMap<String, WebPartTemplate>();
+	protected ConcurrentMap<String, WebPartTemplate> templates = new ConcurrentHashMap<String, WebPartTemplate>();
 	/**
 	 *
 	 */
 	protected ConfigDir templatesDir = null;
+	/**
+	 * Watches the template directories while template reloading is on; null otherwise
+	 */
+	protected WatchService watchService = null;
 
 	/**
 	 *
@@ -69,13 +106,16 @@ public class WebPartTemplateService {
 	 *
 	 */
 	public WebPartTemplate getTemplate(String lang, String name) {
-		String shortName = lang + File.separator + name;
+		String shortName = getTemplateName(lang, name);
 		WebPartTemplate result = templates.get(shortName);
 
 		if (result == null) {
 			try {
-				loadTemplate(shortName);
-				result = templates.get(shortName);
+				WebPartTemplate template = compileTemplate(shortName);
+				result = templates.putIfAbsent(shortName, template);
+				if (result == null) {
+					result = template;
+				}
 			} catch (IOException ioex) {
 				log.warning(LogBuilder.createSystemMessage().
 						addParameter("template name", shortName).
@@ -87,32 +127,277 @@ public class WebPartTemplateService {
 	}
 
 	/**
-	 *
+	 * @return the name of the template for the given language, as returned by WebPartTemplate.getName()
+	 */
+	public String getTemplateName(String lang, String name) {
+		return lang + File.separator + name;
+	}
+
+	/**
+	 * Compiles the template and puts it in place of the current one; drops what has been rendered from the old one.
 	 */
 	protected void loadTemplate(String shortName) throws IOException {
+		WebPartTemplate template = compileTemplate(shortName);
+		templates.put(shortName, template);
+		WebPartCache.getInstance().invalidateTemplate(shortName);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected WebPartTemplate compileTemplate(String shortName) throws IOException {
 		WebPartTemplate template = new WebPartTemplate(shortName);
-		String fileName = getTemplatesDir().getAbsoluteConfigFileName(shortName + ".html");
+		String fileName = getTemplatesDir().getAbsoluteConfigFileName(shortName + TEMPLATE_FILE_ENDING);
 		log.config(LogBuilder.createSystemMessage().
 				addAction("open html template file").
 				addParameter("file name", fileName).toString());
 		File file = new File(fileName);
 
+		String source = Files.toString(file, Charsets.UTF_8);
+		if (source != null) {
+			template.initialize(source);
+			log.config(LogBuilder.createSystemMessage().addAction("Initialize template").toString());
+		}
+
+		return template;
+	}
+
+	/**
+	 * Compiles all templates of the default and custom template directory in parallel, so that no request has to.
+	 *
+	 * @methodtype command
+	 */
+	public void loadAllTemplates() {
+		Set<String> shortNames = new TreeSet<String>();
+		collectTemplateNames(getDefaultDir(), "", shortNames);
+		collectTemplateNames(getCustomDir(), "", shortNames);
+
+		ExecutorService executor = Executors.newFixedThreadPool(MAX_COMPILING_THREADS, getCompilingThreadFactory());
+		try {
+			List<Future<WebPartTemplate>> results = new ArrayList<Future<WebPartTemplate>>(shortNames.size());
+			for (final String shortName : shortNames) {
+				results.add(submit(executor, new Callable<WebPartTemplate>() {
+					@Override
+					public WebPartTemplate call() throws IOException {
+						return compileTemplate(shortName);
+					}
+				}));
+			}
+
+			for (Future<WebPartTemplate> result : results) {
+				try {
+					WebPartTemplate template = result.get();
+					templates.put(template.getName(), template);
+				} catch (ExecutionException ex) {
+					log.warning(LogBuilder.createSystemMessage().
+							addException("Problem compiling template", ex.getCause()).toString());
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addParameter("Compiled templates", String.valueOf(templates.size())).toString());
+	}
+
+	/**
+	 * Compiles on the calling thread if the executor can not take the task, e.g. because App Engine denies the
+	 * creation of a thread.
+	 *
+	 * @methodtype helper
+	 */
+	protected static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
 		try {
-			String source = Files.toString(file, Charsets.UTF_8);
-			//String source = Resources.toString(Resources.getResource(fileName), Charsets.UTF_8);
+			return executor.submit(task);
+		} catch (RuntimeException ex) {
+			log.config(LogBuilder.createSystemMessage().
+					addException("could not submit compiling task, compiling on calling thread", ex).toString());
+			FutureTask<T> result = new FutureTask<T>(task);
+			result.run();
+			return result;
+		}
+	}
+
+	/**
+	 * Adds the short names of all templates in dir and its subdirectories; prefix is the short name of dir.
+	 */
+	protected void collectTemplateNames(File dir, String prefix, Collection<String> shortNames) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
 
-			if (source != null) {
-				template.initialize(source);
-				log.config(LogBuilder.createSystemMessage().addAction("Initialize template").toString());
+		for (File file : files) {
+			String fileName = file.getName();
+			if (file.isDirectory()) {
+				collectTemplateNames(file, prefix + fileName + File.separator, shortNames);
+			} else if (fileName.endsWith(TEMPLATE_FILE_ENDING)) {
+				String name = fileName.substring(0, fileName.length() - TEMPLATE_FILE_ENDING.length());
+				shortNames.add(prefix + name);
 			}
+		}
+	}
+
+	/**
+	 * On App Engine, threads have to be created by the ThreadManager and end with the request.
+	 *
+	 * @methodtype factory
+	 */
+	protected static ThreadFactory getCompilingThreadFactory() {
+		try {
+			return ThreadManager.currentRequestThreadFactory();
+		} catch (RuntimeException ex) {
+			// not in a request, e.g. in tests or tools
+			return Executors.defaultThreadFactory();
+		}
+	}
+
+	/**
+	 * Watches the default and custom template directory and reloads templates as they change, until
+	 * stopWatchingTemplates is called. Where no file system events or threads are available, templates stay as they
+	 * are.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized void startWatchingTemplates() {
+		if (watchService != null) {
+			return;
+		}
 
-			templates.put(shortName, template);
-		} catch (IOException e) {
+		try {
+			final WatchService newWatchService = FileSystems.getDefault().newWatchService();
+			registerAll(newWatchService, getDefaultDir());
+			registerAll(newWatchService, getCustomDir());
+
+			Thread watcher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					watchTemplates(newWatchService);
+				}
+			}, "template-watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+
+			watchService = newWatchService;
+		} catch (IOException | RuntimeException ex) {
 			log.warning(LogBuilder.createSystemMessage().
-					addException("I/O Error while reading Template file", e).toString());
+					addException("Templates will not be reloaded", ex).toString());
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void stopWatchingTemplates() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException ioex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addException("Problem closing template watcher", ioex).toString());
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Registers dir and all its subdirectories with the watch service
+	 */
+	protected void registerAll(WatchService service, File dir) throws IOException {
+		if (!dir.isDirectory()) {
+			return;
+		}
+
+		dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				registerAll(service, file);
+			}
+		}
+	}
+
+	/**
+	 * Reloads templates as their files change, until the watch service is closed
+	 */
+	protected void watchTemplates(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+						handleChange(service, dir.resolve((Path) event.context()).toFile());
+					}
+				}
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException ex) {
+			// stopped watching
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
+	/**
+	 *
+	 */
+	protected void handleChange(WatchService service, File file) {
+		try {
+			if (file.isDirectory()) {
+				registerAll(service, file);
+				return;
+			}
+
+			String shortName = asTemplateName(file);
+			if (shortName != null) {
+				loadTemplate(shortName);
+				log.info(LogBuilder.createSystemMessage().
+						addParameter("Reloaded template", shortName).toString());
+			}
+		} catch (IOException ioex) {
+			log.warning(LogBuilder.createSystemMessage().
+					addParameter("file", file.getPath()).
+					addException("Problem reloading template", ioex).toString());
+		}
+	}
+
+	/**
+	 * @return short name of the template stored in file, or null if file is no template
+	 */
+	protected String asTemplateName(File file) {
+		String path = file.getAbsolutePath();
+		if (!path.endsWith(TEMPLATE_FILE_ENDING)) {
+			return null;
+		}
+
+		for (File dir : new File[] { getDefaultDir(), getCustomDir() }) {
+			String prefix = dir.getAbsolutePath() + File.separator;
+			if (path.startsWith(prefix)) {
+				return path.substring(prefix.length(), path.length() - TEMPLATE_FILE_ENDING.length());
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 *
+	 */
+	protected File getDefaultDir() {
+		return new File(getTemplatesDir().asString(), ConfigDir.DEFAULT_DIR_NAME);
+	}
+
+	/**
+	 *
+	 */
+	protected File getCustomDir() {
+		return new File(getTemplatesDir().asString(), ConfigDir.CUSTOM_DIR_NAME);
+	}
+
 	/**
 	 *
 	 */
@@ -121,10 +406,12 @@ public class WebPartTemplateService {
 	}
 
 	/**
-	 *
+	 * Forgets all templates compiled for the previous directory and everything rendered from them.
 	 */
 	public void setTemplatesDir(ConfigDir newTemplatesDir) {
 		templatesDir = newTemplatesDir;
+		templates.clear();
+		WebPartCache.getInstance().invalidateAll();
 	}
 
 }
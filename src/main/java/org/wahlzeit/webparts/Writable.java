@@ -33,4 +33,9 @@ public interface Writable {
 	 */
 	void writeOn(Writer writer) throws IOException;
 
+	/**
+	 * Writes the same text as writeOn(Writer), but as UTF-8 bytes
+	 */
+	void writeOn(EncodedOutput out) throws IOException;
+
 }
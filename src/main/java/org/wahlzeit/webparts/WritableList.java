@@ -52,6 +52,16 @@ public class WritableList implements Writable {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public void writeOn(EncodedOutput out) throws IOException {
+		for (Iterator<Writable> pi = writables.listIterator(); pi.hasNext(); ) {
+			Writable part = pi.next();
+			part.writeOn(out);
+		}
+	}
+
 	/**
 	 *
 	 */
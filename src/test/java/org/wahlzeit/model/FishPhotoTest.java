@@ -23,10 +23,12 @@ package org.wahlzeit.model;
 
 import static org.junit.Assert.*;
 
+import com.google.appengine.api.images.ImagesServiceFactory;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
+import org.wahlzeit.services.DataObject;
 import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
 
 /**
@@ -108,4 +110,143 @@ public class FishPhotoTest {
 	public void testSetNameNull() {
 		photo4.setFish(null);
 	}
+
+	//*************************************************************************
+	//		Photo rendition manifest
+	//*************************************************************************
+	@Test
+	public void testImageManifest() {
+		assertFalse(photo2.hasImageManifest());
+		assertFalse(photo2.hasStoredImage(PhotoSize.THUMB));
+
+		photo2.resetWriteCount();
+		photo2.addStoredImage(PhotoSize.THUMB);
+		photo2.addStoredImage(PhotoSize.LARGE);
+
+		assertTrue(photo2.isDirty());
+		assertTrue(photo2.hasImageManifest());
+		assertTrue(photo2.hasStoredImage(PhotoSize.THUMB));
+		assertTrue(photo2.hasStoredImage(PhotoSize.LARGE));
+		assertFalse(photo2.hasStoredImage(PhotoSize.MEDIUM));
+	}
+
+	//*************************************************************************
+	//		Photo image versions
+	//*************************************************************************
+	@Test
+	public void testImageVersion() {
+		assertNull(photo2.getImageVersion(PhotoSize.THUMB));
+		assertEquals(-1, photo2.getImageLength(PhotoSize.THUMB));
+		assertEquals(photo2.getCreationTime(), photo2.getImageModificationTime());
+
+		photo2.setImage(PhotoSize.THUMB, ImagesServiceFactory.makeImage(new byte[] {1, 2, 3}));
+		String version = photo2.getImageVersion(PhotoSize.THUMB);
+		assertNotNull(version);
+		assertNull(photo2.getImageVersion(PhotoSize.SMALL));
+		assertEquals(3, photo2.getImageLength(PhotoSize.THUMB));
+		assertEquals(-1, photo2.getImageLength(PhotoSize.SMALL));
+		assertTrue(photo2.getImageModificationTime() >= photo2.getCreationTime());
+
+		photo2.resetWriteCount();
+		photo2.setImage(PhotoSize.THUMB, ImagesServiceFactory.makeImage(new byte[] {1, 2, 3}));
+		assertFalse(photo2.isDirty());
+		assertEquals(version, photo2.getImageVersion(PhotoSize.THUMB));
+
+		photo2.setImage(PhotoSize.THUMB, ImagesServiceFactory.makeImage(new byte[] {1, 2, 4}));
+		assertTrue(photo2.isDirty());
+		assertFalse(version.equals(photo2.getImageVersion(PhotoSize.THUMB)));
+	}
+
+	@Test
+	public void testLoadedImage() {
+		photo2.resetWriteCount();
+		photo2.setLoadedImage(PhotoSize.THUMB, ImagesServiceFactory.makeImage(new byte[] {1, 2, 3}));
+
+		assertFalse(photo2.isDirty());
+		assertNotNull(photo2.getLoadedImage(PhotoSize.THUMB));
+		assertTrue(photo2.hasStoredImage(PhotoSize.THUMB));
+		assertNotNull(photo2.getImageVersion(PhotoSize.THUMB));
+		assertEquals(3, photo2.getImageLength(PhotoSize.THUMB));
+	}
+
+	//*************************************************************************
+	//		Pending renditions
+	//*************************************************************************
+	@Test
+	public void testBestAvailableSize() {
+		photo2.setWidthAndHeight(2000, 2000);
+		assertEquals(PhotoSize.MEDIUM, photo2.getBestAvailableSize(PhotoSize.MEDIUM));
+
+		photo2.setRenditionsPending(true);
+		assertNull(photo2.getBestAvailableSize(PhotoSize.MEDIUM));
+
+		photo2.setImage(PhotoSize.THUMB, ImagesServiceFactory.makeImage(new byte[] {1}));
+		assertEquals(PhotoSize.THUMB, photo2.getBestAvailableSize(PhotoSize.MEDIUM));
+
+		photo2.addStoredImage(PhotoSize.SMALL);
+		photo2.addStoredImage(PhotoSize.LARGE);
+		assertEquals(PhotoSize.SMALL, photo2.getBestAvailableSize(PhotoSize.MEDIUM));
+		assertEquals(PhotoSize.LARGE, photo2.getBestAvailableSize(PhotoSize.EXTRA_LARGE));
+
+		photo2.setRenditionsPending(false);
+		assertEquals(PhotoSize.MEDIUM, photo2.getBestAvailableSize(PhotoSize.MEDIUM));
+	}
+
+	//*************************************************************************
+	//		Changed fields
+	//*************************************************************************
+	@Test
+	public void testChangedFields() {
+		assertTrue(photo2.hasChanged(Photo.TAG_FIELDS | Photo.OWNER_FIELDS));
+
+		photo2.resetWriteCount();
+		assertFalse(photo2.hasChanged(DataObject.ALL_FIELDS));
+
+		photo2.addToPraise(5);
+		assertFalse(photo2.isDirty());
+
+		photo2.setNoNewPraise();
+		assertTrue(photo2.isDirty());
+		assertTrue(photo2.hasChanged(Photo.COUNTER_FIELDS));
+		assertFalse(photo2.hasChanged(Photo.TAG_FIELDS | Photo.OWNER_FIELDS | Photo.IMAGE_FIELDS));
+
+		photo2.setTags(new Tags("fish"));
+		assertTrue(photo2.hasChanged(Photo.TAG_FIELDS));
+		assertFalse(photo2.hasChanged(Photo.OWNER_FIELDS));
+
+		photo2.resetWriteCount();
+		assertFalse(photo2.hasChanged(DataObject.ALL_FIELDS));
+	}
+
+	//*************************************************************************
+	//		Praise
+	//*************************************************************************
+	@Test
+	public void testPraise() {
+		photo2.resetWriteCount();
+		double initialPraise = photo2.getPraise();
+		long initialNoVotes = photo2.getNoVotes();
+
+		photo2.addToPraise(4);
+		double pendingPraise = (initialPraise * initialNoVotes + 4) / (initialNoVotes + 1);
+		assertEquals(initialNoVotes + 1, photo2.getNoVotes());
+		assertEquals(pendingPraise, photo2.getPraise(), 0.0001);
+		assertTrue(photo2.hasNewPraise());
+		assertFalse(photo2.hasChanged(DataObject.ALL_FIELDS));
+
+		// the shards include the vote counted before they were read, but not the one counted afterwards
+		long includedPendingSum = photo2.getPendingPraiseSum();
+		long includedPendingNoVotes = photo2.getPendingNoVotes();
+		photo2.addToPraise(2);
+		photo2.resetWriteCount();
+		photo2.setShardedPraise(4, 1, includedPendingSum, includedPendingNoVotes);
+		assertEquals(initialNoVotes + 2, photo2.getNoVotes());
+		assertEquals((initialPraise * initialNoVotes + 6) / (initialNoVotes + 2), photo2.getPraise(), 0.0001);
+		assertEquals(1, photo2.getPendingNoVotes());
+		assertFalse(photo2.hasChanged(Photo.COUNTER_FIELDS));
+
+		// a total read before the current one is ignored
+		photo2.setShardedPraise(0, 0, 0, 0);
+		assertEquals(initialNoVotes + 2, photo2.getNoVotes());
+	}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the LocalImageScaler class.
+ */
+public class LocalImageScalerTest {
+
+	private static final int WIDTH = 1000;
+	private static final int HEIGHT = 700;
+
+	/**
+	 * A checkerboard of black and white pixels, which has to average to gray
+	 */
+	private Image createCheckerboard(String formatName) throws IOException {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				image.setRGB(x, y, ((x + y) % 2 == 0) ? 0xffffff : 0x000000);
+			}
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, formatName, output);
+		return ImagesServiceFactory.makeImage(output.toByteArray());
+	}
+
+	/**
+	 *
+	 */
+	private BufferedImage decode(Image image) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(image.getImageData()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testScaleToAllSizes() throws Exception {
+		Image source = createCheckerboard("png");
+
+		Map<PhotoSize, Image> images = new LocalImageScaler().scaleImage(source, WIDTH, HEIGHT,
+				Arrays.asList(PhotoSize.THUMB, PhotoSize.SMALL, PhotoSize.EXTRA_LARGE));
+
+		assertEquals(3, images.size());
+		for (Map.Entry<PhotoSize, Image> entry : images.entrySet()) {
+			PhotoSize size = entry.getKey();
+			BufferedImage scaled = decode(entry.getValue());
+			assertEquals(size.calcAdjustedWidth(WIDTH, HEIGHT), scaled.getWidth());
+			assertEquals(size.calcAdjustedHeight(WIDTH, HEIGHT), scaled.getHeight());
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAreaAveraging() throws Exception {
+		Image source = createCheckerboard("png");
+
+		Map<PhotoSize, Image> images = new LocalImageScaler().scaleImage(source, WIDTH, HEIGHT,
+				Arrays.asList(PhotoSize.MEDIUM));
+
+		BufferedImage scaled = decode(images.get(PhotoSize.MEDIUM));
+		int pixel = scaled.getRGB(scaled.getWidth() / 2, scaled.getHeight() / 2);
+		int red = (pixel >> 16) & 0xff;
+		assertTrue("expected gray but got " + red, red > 100 && red < 155);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testKeepsFormat() throws Exception {
+		Image source = createCheckerboard("jpeg");
+
+		Map<PhotoSize, Image> images = new LocalImageScaler().scaleImage(source, WIDTH, HEIGHT,
+				Arrays.asList(PhotoSize.THUMB));
+
+		byte[] data = images.get(PhotoSize.THUMB).getImageData();
+		// JPEG start of image marker
+		assertEquals((byte) 0xff, data[0]);
+		assertEquals((byte) 0xd8, data[1]);
+	}
+
+}
@@ -35,8 +35,15 @@ import org.wahlzeit.model.persistence.PersistenceModelTestSuite;
  * 		{@link FlagReasonTest},
  * 		{@link GenderTest},
  * 		{@link GuestTest},
+ * 		{@link LocalImageScalerTest},
  * 		{@link LocationTest},
+ *		{@link PhotoCacheTest},
  *		{@link PhotoFilterTest},
+ *		{@link PhotoIdSetTest},
+ *		{@link PhotoRankingTest},
+ *		{@link PhotoSamplerTest},
+ *		{@link PraiseCounterTest},
+ *		{@link TagIndexTest},
  *		{@link TagsTest},
  *		{@link UserStatusTest},
  *		{@link ValueTest}, 
@@ -58,8 +65,15 @@ import org.wahlzeit.model.persistence.PersistenceModelTestSuite;
 	FlagReasonTest.class, 
 	GenderTest.class, 
 	GuestTest.class,
+	LocalImageScalerTest.class,
 	LocationTest.class, 
+	PhotoCacheTest.class,
 	PhotoFilterTest.class, 
+	PhotoIdSetTest.class,
+	PhotoRankingTest.class,
+	PhotoSamplerTest.class,
+	PraiseCounterTest.class,
+	TagIndexTest.class,
 	TagsTest.class, 
 	UserStatusTest.class, 
 	ValueTest.class,
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the PhotoCache class.
+ */
+public class PhotoCacheTest {
+
+	@ClassRule
+	public static RuleChain ruleChain = RuleChain.outerRule(new LocalDatastoreServiceTestConfigProvider());
+
+	private PhotoCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new PhotoCache(2);
+	}
+
+	/**
+	 *
+	 */
+	protected Photo createCleanPhoto(int id) {
+		Photo result = new Photo(new PhotoId(id));
+		result.resetWriteCount();
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testHitsAndMisses() {
+		Photo photo = createCleanPhoto(1);
+		cache.put(photo);
+
+		assertSame(photo, cache.get(photo.getId()));
+		assertNull(cache.get(new PhotoId(2)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		Photo photo1 = createCleanPhoto(1);
+		Photo photo2 = createCleanPhoto(2);
+		Photo photo3 = createCleanPhoto(3);
+
+		cache.put(photo1);
+		cache.put(photo2);
+		cache.get(photo1.getId());
+		cache.put(photo3);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.contains(photo1.getId()));
+		assertFalse(cache.contains(photo2.getId()));
+		assertTrue(cache.contains(photo3.getId()));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDoesNotEvictDirtyPhotos() {
+		Photo dirty1 = new Photo(new PhotoId(1));
+		Photo dirty2 = new Photo(new PhotoId(2));
+		Photo clean = createCleanPhoto(3);
+
+		cache.put(dirty1);
+		cache.put(dirty2);
+		cache.put(clean);
+
+		assertTrue(cache.contains(dirty1.getId()));
+		assertTrue(cache.contains(dirty2.getId()));
+		assertFalse(cache.contains(clean.getId()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testShrinkCapacity() {
+		cache.put(createCleanPhoto(1));
+		cache.put(createCleanPhoto(2));
+		cache.setCapacity(1);
+
+		assertEquals(1, cache.size());
+		assertTrue(cache.contains(new PhotoId(2)));
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new PhotoCache(0);
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the PhotoIdSet class.
+ */
+public class PhotoIdSetTest {
+
+	private PhotoIdSet set;
+
+	@Before
+	public void setUp() {
+		set = new PhotoIdSet();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAddAndRemove() {
+		assertTrue(set.isEmpty());
+
+		assertTrue(set.add(new PhotoId(5)));
+		assertFalse(set.add(new PhotoId(5)));
+		assertTrue(set.add(new PhotoId(70)));
+		assertEquals(2, set.size());
+		assertTrue(set.contains(new PhotoId(70)));
+		assertFalse(set.contains(new PhotoId(6)));
+
+		assertTrue(set.remove(new PhotoId(5)));
+		assertFalse(set.remove(new PhotoId(5)));
+		assertEquals(1, set.size());
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(new PhotoId(70)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		set.add(new PhotoId(3));
+		set.add(new PhotoId(1000));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(set);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		PhotoIdSet copy = (PhotoIdSet) in.readObject();
+
+		assertEquals(2, copy.size());
+		assertTrue(copy.contains(new PhotoId(3)));
+		assertTrue(copy.contains(new PhotoId(1000)));
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the PhotoRanking class.
+ */
+public class PhotoRankingTest {
+
+	private PhotoRanking ranking;
+
+	@Before
+	public void setUp() {
+		ranking = new PhotoRanking(3);
+	}
+
+	@Test
+	public void testOrder() {
+		ranking.update(new PhotoRanking.Entry(new PhotoId(1), 5.0, 2));
+		ranking.update(new PhotoRanking.Entry(new PhotoId(2), 7.0, 1));
+		ranking.update(new PhotoRanking.Entry(new PhotoId(3), 5.0, 4));
+
+		List<PhotoRanking.Entry> top = ranking.getTop(3);
+		assertEquals(3, top.size());
+		assertEquals(new PhotoId(2), top.get(0).getPhotoId());
+		assertEquals(new PhotoId(3), top.get(1).getPhotoId());
+		assertEquals(new PhotoId(1), top.get(2).getPhotoId());
+		assertEquals(1, ranking.getTop(1).size());
+	}
+
+	@Test
+	public void testUpdateReplacesEntry() {
+		ranking.update(new PhotoRanking.Entry(new PhotoId(1), 5.0, 2));
+		ranking.update(new PhotoRanking.Entry(new PhotoId(2), 7.0, 1));
+		ranking.update(new PhotoRanking.Entry(new PhotoId(1), 9.0, 3));
+
+		assertEquals(2, ranking.size());
+		assertEquals(new PhotoId(1), ranking.getTop(1).get(0).getPhotoId());
+
+		ranking.remove(new PhotoId(1));
+		assertEquals(1, ranking.size());
+		assertEquals(new PhotoId(2), ranking.getTop(1).get(0).getPhotoId());
+	}
+
+	@Test
+	public void testCapacity() {
+		for (int i = 1; i <= 5; i++) {
+			ranking.update(new PhotoRanking.Entry(new PhotoId(i), i, 1));
+		}
+		ranking.update(new PhotoRanking.Entry(new PhotoId(6), 0.5, 1));
+
+		List<PhotoRanking.Entry> top = ranking.getTop(10);
+		assertEquals(3, top.size());
+		assertEquals(new PhotoId(5), top.get(0).getPhotoId());
+		assertEquals(new PhotoId(3), top.get(2).getPhotoId());
+		for (PhotoRanking.Entry entry : top) {
+			assertTrue(entry.getPraise() >= 3.0);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the PhotoSampler class.
+ */
+public class PhotoSamplerTest {
+
+	private PhotoSampler sampler;
+	private PhotoIdSet processed;
+	private PhotoIdSet skipped;
+	private Random random;
+
+	private PhotoId id1;
+	private PhotoId id2;
+	private PhotoId id3;
+
+	@Before
+	public void setUp() {
+		sampler = new PhotoSampler();
+		processed = new PhotoIdSet();
+		skipped = new PhotoIdSet();
+		random = new Random(42);
+
+		id1 = PhotoId.getNextId();
+		id2 = PhotoId.getNextId();
+		id3 = PhotoId.getNextId();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPicksAllCandidates() {
+		sampler.rebuild(Arrays.asList(id1, id2, id3), processed, skipped);
+		assertEquals(3, sampler.size());
+
+		Set<PhotoId> picked = new HashSet<PhotoId>();
+		for (int i = 0; i < 200; i++) {
+			picked.add(sampler.pick(random, processed, skipped));
+		}
+		assertEquals(new HashSet<PhotoId>(Arrays.asList(id1, id2, id3)), picked);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDropsProcessedPhotos() {
+		sampler.rebuild(Arrays.asList(id1, id2, id3), processed, skipped);
+		processed.add(id1);
+		processed.add(id3);
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(id2, sampler.pick(random, processed, skipped));
+		}
+		assertEquals(1, sampler.size());
+
+		processed.add(id2);
+		assertEquals(PhotoId.NULL_ID, sampler.pick(random, processed, skipped));
+		assertTrue(sampler.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPrefersNonSkippedPhotos() {
+		skipped.add(id1);
+		sampler.rebuild(Arrays.asList(id1, id2), processed, skipped);
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(id2, sampler.pick(random, processed, skipped));
+		}
+
+		skipped.add(id2);
+		Set<PhotoId> picked = new HashSet<PhotoId>();
+		for (int i = 0; i < 100; i++) {
+			picked.add(sampler.pick(random, processed, skipped));
+		}
+		assertEquals(new HashSet<PhotoId>(Arrays.asList(id1, id2)), picked);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRebuildLeavesOutProcessedPhotos() {
+		processed.add(id2);
+		sampler.rebuild(Arrays.asList(id1, id2, id3), processed, skipped);
+		assertEquals(2, sampler.size());
+		assertTrue(!sampler.asList().contains(id2));
+	}
+
+}
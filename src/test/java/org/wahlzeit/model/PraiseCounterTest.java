@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for the PraiseCounter class.
+ */
+public class PraiseCounterTest {
+
+	@Test
+	public void testAdd() {
+		PraiseCounter counter = new PraiseCounter();
+		counter.add(7);
+		counter.add(3);
+		assertEquals(10, counter.getSum());
+		assertEquals(2, counter.getNoVotes());
+
+		counter.add(-10, -2);
+		assertEquals(0, counter.getSum());
+		assertEquals(0, counter.getNoVotes());
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final PraiseCounter counter = new PraiseCounter();
+		final int noVotesPerThread = 10000;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < noVotesPerThread; j++) {
+						counter.add(2);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(threads.length * noVotesPerThread, counter.getNoVotes());
+		assertEquals(threads.length * noVotesPerThread * 2, counter.getSum());
+	}
+
+}
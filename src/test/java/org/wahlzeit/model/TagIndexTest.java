@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the TagIndex class.
+ */
+public class TagIndexTest {
+
+	private TagIndex index;
+
+	@Before
+	public void setUp() {
+		index = new TagIndex();
+		index.setTags(new PhotoId(1), asSet("un:anna", "tg:fish"));
+		index.setTags(new PhotoId(2), asSet("un:bob", "tg:fish", "tg:lake"));
+		index.setTags(new PhotoId(3), asSet("un:anna", "tg:lake"));
+	}
+
+	/**
+	 *
+	 */
+	protected Set<String> asSet(String... tags) {
+		return new HashSet<String>(Arrays.asList(tags));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSingleTag() {
+		BitSet ids = index.getPhotoIds("tg:fish");
+		assertEquals(2, ids.cardinality());
+		assertTrue(ids.get(1));
+		assertTrue(ids.get(2));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIntersection() {
+		BitSet ids = index.getPhotoIdsMatchingAll(Arrays.asList("un:anna", "tg:lake"));
+		assertEquals(1, ids.cardinality());
+		assertTrue(ids.get(3));
+
+		assertTrue(index.getPhotoIdsMatchingAll(Arrays.asList("un:anna", "tg:unknown")).isEmpty());
+		assertTrue(index.getPhotoIdsMatchingAll(Collections.<String>emptyList()).isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReplaceTags() {
+		assertTrue(index.setTags(new PhotoId(2), asSet("un:bob", "tg:sea")));
+		assertFalse(index.setTags(new PhotoId(2), asSet("un:bob", "tg:sea")));
+
+		assertFalse(index.getPhotoIds("tg:fish").get(2));
+		assertFalse(index.getPhotoIds("tg:lake").get(2));
+		assertTrue(index.getPhotoIds("tg:sea").get(2));
+		assertEquals(asSet("un:bob", "tg:sea"), index.getTags(new PhotoId(2)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRemovePhoto() {
+		index.removePhoto(new PhotoId(1));
+
+		assertTrue(index.getTags(new PhotoId(1)).isEmpty());
+		assertEquals(1, index.getPhotoIds("tg:fish").cardinality());
+		assertEquals(1, index.getPhotoIds("un:anna").cardinality());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReturnsCopies() {
+		index.getPhotoIds("tg:fish").clear();
+		assertEquals(2, index.getPhotoIds("tg:fish").cardinality());
+	}
+
+}
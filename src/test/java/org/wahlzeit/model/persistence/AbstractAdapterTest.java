@@ -5,11 +5,19 @@ import com.google.appengine.api.images.ImagesServiceFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.wahlzeit.model.PhotoSize;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -128,4 +136,31 @@ public abstract class AbstractAdapterTest {
 		exists = imageStorage.doesImageExist("wrong file name", 1);
 		assert !exists;
 	}
+
+	@Test
+	public void testBatchWriteAndRead() throws IOException {
+		Map<PhotoSize, Image> images = new EnumMap<PhotoSize, Image>(PhotoSize.class);
+		images.put(PhotoSize.THUMB, smallTestImage);
+		images.put(PhotoSize.SMALL, smallTestImage);
+
+		Set<PhotoSize> writtenSizes = imageStorage.writeImages("batch", images);
+		assertEquals(images.keySet(), writtenSizes);
+
+		Map<PhotoSize, Serializable> readImages =
+				imageStorage.readImages("batch", Arrays.asList(PhotoSize.THUMB, PhotoSize.MEDIUM, PhotoSize.SMALL));
+		assertEquals(2, readImages.size());
+		assertTrue(readImages.get(PhotoSize.THUMB) instanceof Image);
+		assertTrue(readImages.get(PhotoSize.SMALL) instanceof Image);
+		assertFalse(readImages.containsKey(PhotoSize.MEDIUM));
+	}
+
+	@Test
+	public void testOriginalImage() throws IOException {
+		assertEquals(null, imageStorage.readOriginalImage("original"));
+
+		imageStorage.writeOriginalImage(smallTestImage, "original");
+
+		assertTrue(imageStorage.readOriginalImage("original") instanceof Image);
+		assertFalse(imageStorage.doesImageExist("original", PhotoSize.THUMB.asInt()));
+	}
 }
@@ -9,10 +9,15 @@ import org.junit.rules.TestRule;
 import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
 import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.Serializable;
 
-import static org.junit.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test class for {@link DatastoreAdapter}
@@ -26,24 +31,53 @@ public class DatastoreAdapterTest extends AbstractAdapterTest {
 			outerRule(new LocalDatastoreServiceTestConfigProvider()).
 			around(new RegisteredOfyEnvironmentProvider());
 
-	private Image tooLargeTestImage;
+	private Image largeTestImage;
 
 
 	@Override
 	protected void storageDependentSetUp() {
 		imageStorage = new DatastoreAdapter();
 
-		ByteBuffer bb = ByteBuffer.allocate(1024 * 1025);
-		tooLargeTestImage = ImagesServiceFactory.makeImage(bb.array());
+		// larger than two chunks, with distinct bytes to detect wrongly ordered chunks
+		byte[] data = new byte[2 * DatastoreAdapter.CHUNK_SIZE + 12345];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i / DatastoreAdapter.CHUNK_SIZE + i);
+		}
+		largeTestImage = ImagesServiceFactory.makeImage(data);
+	}
+
+
+	@Test
+	public void testLargeImage() throws IOException {
+		imageStorage.writeImage(largeTestImage, "blub", 1);
+
+		Serializable image = imageStorage.readImage("blub", 1);
+		assertTrue(image instanceof Image);
+		assertArrayEquals(largeTestImage.getImageData(), ((Image) image).getImageData());
 	}
 
+	@Test
+	public void testLargeImageStream() throws IOException {
+		imageStorage.writeImage(largeTestImage, "blub", 2);
 
-	@Test(expected = ArrayIndexOutOfBoundsException.class)
-	public void testUpperSizeLimit() {
-		try {
-			imageStorage.writeImage(tooLargeTestImage, "blub", 1);
-		} catch (IOException e) {
-			fail("IOException should not be thrown!");
+		InputStream input = imageStorage.openImageStream("blub", 2);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int noBytes = input.read(buffer); noBytes != -1; noBytes = input.read(buffer)) {
+			output.write(buffer, 0, noBytes);
 		}
+		input.close();
+
+		assertArrayEquals(largeTestImage.getImageData(), output.toByteArray());
+		assertNull(imageStorage.openImageStream("blub", 3));
+	}
+
+	@Test
+	public void testNoChunks() {
+		assertEquals(0, DatastoreAdapter.getNoChunks(0));
+		assertEquals(0, DatastoreAdapter.getNoChunks(DatastoreAdapter.CHUNK_SIZE));
+		assertEquals(1, DatastoreAdapter.getNoChunks(DatastoreAdapter.CHUNK_SIZE + 1));
+		assertEquals(1, DatastoreAdapter.getNoChunks(2 * DatastoreAdapter.CHUNK_SIZE));
+		assertEquals(2, DatastoreAdapter.getNoChunks(2 * DatastoreAdapter.CHUNK_SIZE + 1));
 	}
 }
@@ -0,0 +1,103 @@
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link FileSystemAdapter}
+ */
+public class FileSystemAdapterTest extends AbstractAdapterTest {
+
+	private File rootDir;
+
+
+	@Override
+	protected void storageDependentSetUp() {
+		try {
+			rootDir = Files.createTempDirectory("wahlzeit-images").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		imageStorage = new FileSystemAdapter(rootDir);
+	}
+
+	@Override
+	protected void storageDependentTearDown() {
+		deleteRecursively(rootDir);
+	}
+
+	/**
+	 *
+	 */
+	private void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+
+	@Test
+	public void testOverwriteLeavesNoTempFiles() throws IOException {
+		imageStorage.writeImage(smallTestImage, "blub", 1);
+		imageStorage.writeImage(maxSizeTestImage, "blub", 1);
+
+		File[] files = new File(rootDir, "blub").listFiles();
+		assertEquals(1, files.length);
+		assertEquals(maxSizeTestImage.getImageData().length, imageStorage.getImageLength("blub", 1));
+	}
+
+	@Test
+	public void testTransferImage() throws IOException {
+		byte[] data = new byte[3 * ImageStorage.TRANSFER_BUFFER_SIZE + 7];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		Image image = ImagesServiceFactory.makeImage(data);
+		imageStorage.writeImage(image, "blub", 1);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		long transferred = imageStorage.transferImageTo("blub", 1, 0, data.length, Channels.newChannel(output));
+		assertEquals(data.length, transferred);
+		assertArrayEquals(data, output.toByteArray());
+
+		output.reset();
+		transferred = imageStorage.transferImageTo("blub", 1, 100, 50, Channels.newChannel(output));
+		assertEquals(50, transferred);
+		for (int i = 0; i < 50; i++) {
+			assertEquals(data[100 + i], output.toByteArray()[i]);
+		}
+
+		assertEquals(-1, imageStorage.transferImageTo("bla", 1, 0, 10, Channels.newChannel(output)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectPathInPhotoId() throws IOException {
+		imageStorage.readImage(".." + File.separator + "blub", 1);
+	}
+
+	@Test
+	public void testOriginalImage() throws IOException {
+		imageStorage.writeOriginalImage(smallTestImage, "blub");
+		assertEquals(smallTestImage.getImageData().length,
+				((Image) imageStorage.readOriginalImage("blub")).getImageData().length);
+
+		imageStorage.deleteOriginalImage("blub");
+		assertNull(imageStorage.readOriginalImage("blub"));
+		imageStorage.deleteOriginalImage("blub");
+	}
+}
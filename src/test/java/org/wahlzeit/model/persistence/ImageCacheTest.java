@@ -0,0 +1,106 @@
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.model.PhotoSize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link ImageCache}
+ */
+public class ImageCacheTest {
+
+	private Map<String, Image> storedImages;
+	private int noLoads;
+	private ImageCache imageCache;
+
+	@Before
+	public void setUp() {
+		storedImages = new HashMap<String, Image>();
+		noLoads = 0;
+
+		imageCache = new ImageCache(2048) {
+			@Override
+			protected Image loadImage(String photoIdAsString, PhotoSize photoSize) {
+				noLoads++;
+				return storedImages.get(asKey(photoIdAsString, photoSize));
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	protected Image storeImage(String photoId, PhotoSize photoSize, int noBytes) {
+		Image image = ImagesServiceFactory.makeImage(new byte[noBytes]);
+		storedImages.put(imageCache.asKey(photoId, photoSize), image);
+		return image;
+	}
+
+	@Test
+	public void testLoadsOnFirstAccessOnly() {
+		Image image = storeImage("x1", PhotoSize.THUMB, 100);
+
+		assertSame(image, imageCache.getImage("x1", PhotoSize.THUMB));
+		assertSame(image, imageCache.getImage("x1", PhotoSize.THUMB));
+		assertEquals(1, noLoads);
+		assertEquals(1, imageCache.getHitCount());
+		assertEquals(1, imageCache.getMissCount());
+		assertEquals(100, imageCache.getNoBytes());
+	}
+
+	@Test
+	public void testMissingImage() {
+		assertNull(imageCache.getImage("x1", PhotoSize.LARGE));
+		assertEquals(0, imageCache.getNoImages());
+	}
+
+	@Test
+	public void testEvictsByBytes() {
+		storeImage("x1", PhotoSize.THUMB, 1000);
+		storeImage("x2", PhotoSize.THUMB, 1000);
+		storeImage("x3", PhotoSize.THUMB, 1000);
+
+		imageCache.getImage("x1", PhotoSize.THUMB);
+		imageCache.getImage("x2", PhotoSize.THUMB);
+		imageCache.getImage("x1", PhotoSize.THUMB);
+		imageCache.getImage("x3", PhotoSize.THUMB);
+
+		assertEquals(2, imageCache.getNoImages());
+		assertEquals(2000, imageCache.getNoBytes());
+
+		// x2 was the least recently used one
+		imageCache.getImage("x1", PhotoSize.THUMB);
+		assertEquals(3, noLoads);
+		imageCache.getImage("x2", PhotoSize.THUMB);
+		assertEquals(4, noLoads);
+	}
+
+	@Test
+	public void testDoesNotCacheImagesLargerThanCapacity() {
+		storeImage("x1", PhotoSize.EXTRA_LARGE, 4096);
+
+		imageCache.getImage("x1", PhotoSize.EXTRA_LARGE);
+		assertEquals(0, imageCache.getNoBytes());
+	}
+
+	@Test
+	public void testInvalidate() {
+		storeImage("x1", PhotoSize.THUMB, 100);
+		storeImage("x1", PhotoSize.SMALL, 200);
+		imageCache.getImage("x1", PhotoSize.THUMB);
+		imageCache.getImage("x1", PhotoSize.SMALL);
+
+		imageCache.invalidate("x1");
+		assertEquals(0, imageCache.getNoImages());
+		assertEquals(0, imageCache.getNoBytes());
+	}
+}
@@ -27,13 +27,17 @@ import org.junit.runners.Suite.SuiteClasses;
 
 /**
  * Test Suite for Package {@link org.wahlzeit.model.persistence}. Junit will invoke the tests in the classes:
- * 		{@link DatastoreAdapterTest}
+ * 		{@link DatastoreAdapterTest},
+ * 		{@link FileSystemAdapterTest},
+ * 		{@link ImageCacheTest}
  *
  */
 @RunWith(Suite.class)
 @SuiteClasses({ 
 	//Test classes
-	DatastoreAdapterTest.class 
+	DatastoreAdapterTest.class,
+	FileSystemAdapterTest.class,
+	ImageCacheTest.class
 })
 
 public class PersistenceModelTestSuite {
@@ -31,6 +31,8 @@ import org.wahlzeit.services.mailing.MailingServiceTestSuite;
  * 
  * 		{@link EmailAddressTest},
  *		{@link LogBuilderTest},
+ *		{@link StructuredLogBuilderTest},
+ *		{@link UnitOfWorkTest},
  *		{@link MailingServiceTestSuite}
  */
 @RunWith(Suite.class)
@@ -38,6 +40,8 @@ import org.wahlzeit.services.mailing.MailingServiceTestSuite;
 	//Test classes
 	EmailAddressTest.class, 
 	LogBuilderTest.class,
+	StructuredLogBuilderTest.class,
+	UnitOfWorkTest.class,
 	
 	//Test suites
 	MailingServiceTestSuite.class
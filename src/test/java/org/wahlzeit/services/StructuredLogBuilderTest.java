@@ -0,0 +1,117 @@
+package org.wahlzeit.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link StructuredLogBuilder}.
+ */
+public class StructuredLogBuilderTest {
+
+	private Logger log;
+	private List<String> messages;
+	private Session session;
+
+	@Before
+	public void setUp() {
+		session = SessionManager.getThreadLocalSession();
+		SessionManager.dropThreadLocalSession();
+
+		messages = new ArrayList<String>();
+		log = Logger.getLogger(StructuredLogBuilderTest.class.getName());
+		log.setUseParentHandlers(false);
+		log.setLevel(Level.INFO);
+		log.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				messages.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		for (Handler handler : log.getHandlers()) {
+			log.removeHandler(handler);
+		}
+		SessionManager.setThreadLocalSession(session);
+	}
+
+	@Test
+	public void testDisabledLevel() {
+		CountingValue value = new CountingValue();
+		StructuredLogBuilder builder = StructuredLogBuilder.createSystemMessage(log, Level.CONFIG);
+		assertSame(builder, StructuredLogBuilder.createUserMessage(log, Level.FINE));
+
+		builder.addAction("ignored").addParameter("value", value).log();
+		assertEquals(0, value.noCalls);
+		assertTrue(messages.isEmpty());
+	}
+
+	@Test
+	public void testEnabledLevel() {
+		CountingValue value = new CountingValue();
+		StructuredLogBuilder.createSystemMessage(log, Level.INFO).
+				addAction("read image").
+				addParameter("value", value).log();
+
+		assertEquals(1, value.noCalls);
+		assertEquals(1, messages.size());
+		assertEquals("{\"level\":\"sl\",\"session\":\"" + Session.NO_SESSION + "\",\"client\":\"anon\"," +
+				"\"action\":\"read image\",\"value\":\"counted\"}", messages.get(0));
+	}
+
+	@Test
+	public void testEscaping() {
+		StructuredLogBuilder.createUserMessage(log, Level.WARNING).
+				addMessage("say \"hi\"\n\tand \\ leave\u0001").
+				addParameter(null, null).log();
+
+		assertEquals("{\"level\":\"ul\",\"session\":\"" + Session.NO_SESSION + "\",\"client\":\"anon\"," +
+				"\"message\":\"say \\\"hi\\\"\\n\\tand \\\\ leave\\u0001\",\"null\":\"null\"}", messages.get(0));
+	}
+
+	@Test
+	public void testException() {
+		StructuredLogBuilder.createSystemMessage(log, Level.WARNING).
+				addException("because I can", new NullPointerException("sorry")).log();
+
+		String message = messages.get(0);
+		assertTrue(message.contains("\"exception reason\":\"because I can\""));
+		assertTrue(message.contains("\"stacktrace\":\"java.lang.NullPointerException: sorry"));
+	}
+
+	/**
+	 *
+	 */
+	private static class CountingValue {
+		int noCalls = 0;
+
+		@Override
+		public String toString() {
+			noCalls++;
+			return "counted";
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.wahlzeit.services;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.wahlzeit.model.Tag;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link UnitOfWork}.
+ */
+public class UnitOfWorkTest {
+
+	@ClassRule
+	public static RuleChain ruleChain = RuleChain.
+			outerRule(new LocalDatastoreServiceTestConfigProvider()).
+			around(new RegisteredOfyEnvironmentProvider());
+
+	private TestManager manager;
+
+	@Before
+	public void setUp() {
+		manager = new TestManager();
+	}
+
+	@Test
+	public void testWriteWithoutUnitOfWork() {
+		Tag tag = new Tag("fish", "x1");
+		manager.writeObject(tag);
+
+		assertFalse(tag.isDirty());
+		assertEquals(1, manager.dependents.size());
+	}
+
+	@Test
+	public void testWritesAreCoalescedUntilEnd() {
+		Tag tag = new Tag("fish", "x1");
+		Tag otherTag = new Tag("shark", "x1");
+
+		UnitOfWork.begin();
+		manager.writeObject(tag);
+		manager.writeObject(otherTag);
+		tag.incWriteCount();
+		manager.writeObject(tag);
+
+		assertEquals(2, UnitOfWork.getCurrent().getNoPendingObjects());
+		assertTrue(tag.isDirty());
+		assertTrue(manager.dependents.isEmpty());
+
+		UnitOfWork.end();
+
+		assertNull(UnitOfWork.getCurrent());
+		assertFalse(tag.isDirty());
+		assertFalse(otherTag.isDirty());
+		assertEquals(2, manager.dependents.size());
+		assertEquals(tag, manager.dependents.get(0));
+	}
+
+	@Test
+	public void testNestedUnitsOfWork() {
+		Tag tag = new Tag("fish", "x1");
+
+		UnitOfWork.begin();
+		UnitOfWork.begin();
+		manager.writeObject(tag);
+		UnitOfWork.end();
+
+		assertTrue(tag.isDirty());
+		assertTrue(UnitOfWork.isActive());
+
+		UnitOfWork.end();
+		assertFalse(tag.isDirty());
+		assertFalse(UnitOfWork.isActive());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testEndWithoutBegin() {
+		UnitOfWork.end();
+	}
+
+	/**
+	 *
+	 */
+	private static class TestManager extends ObjectManager {
+		List<Persistent> dependents = new ArrayList<Persistent>();
+
+		@Override
+		protected void updateDependents(Persistent object) {
+			dependents.add(object);
+		}
+	}
+
+}
@@ -31,13 +31,15 @@ import org.junit.runners.Suite.SuiteClasses;
  *		{@link StringUtilTest},
  *		{@link VersionTest}
  *		{@link DoubleUtilTest}
+ *		{@link ByteRangeTest}
  */
 @RunWith(Suite.class)
 @SuiteClasses({ 
 	//Test classes
 	StringUtilTest.class,
 	VersionTest.class, 
-	DoubleUtilTest.class
+	DoubleUtilTest.class,
+	ByteRangeTest.class
 })
 
 public class UtilsTestSuite {